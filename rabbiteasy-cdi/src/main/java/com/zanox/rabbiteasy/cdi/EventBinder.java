@@ -4,6 +4,7 @@ import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.MessageProperties;
 import com.zanox.rabbiteasy.consumer.ConsumerContainer;
 import com.zanox.rabbiteasy.publisher.DeliveryOptions;
+import com.zanox.rabbiteasy.publisher.PublishTemplate;
 import com.zanox.rabbiteasy.publisher.PublisherReliability;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -130,12 +131,8 @@ public abstract class EventBinder {
 
     void bindExchange(ExchangeBinding exchangeBinding)  {
         EventPublisher.PublisherConfiguration configuration = new EventPublisher.PublisherConfiguration(
-                exchangeBinding.exchange,
-                exchangeBinding.routingKey,
-                exchangeBinding.persistent,
-                exchangeBinding.reliability,
-                exchangeBinding.deliveryOptions,
-                exchangeBinding.basicProperties
+                exchangeBinding.compile(),
+                exchangeBinding.reliability
         );
         eventPublisher.addEvent(exchangeBinding.eventType, configuration);
         LOGGER.info("Binding between exchange {} and event type {} activated",
@@ -316,6 +313,16 @@ public abstract class EventBinder {
             return this;
         }
 
+        /**
+         * Compiles the binding into a template used to publish all events
+         * of the bound event type to the bound exchange.
+         *
+         * @return The publish template
+         */
+        PublishTemplate compile() {
+            return new PublishTemplate(exchange, routingKey, basicProperties, persistent, deliveryOptions);
+        }
+
         private ExchangeBinding setPublisherReliability(PublisherReliability reliability) {
             if (this.reliability != PublisherReliability.NONE) {
                 LOGGER.warn("Publisher reliability for event type {} is overridden: {}", eventType.getSimpleName(), reliability);
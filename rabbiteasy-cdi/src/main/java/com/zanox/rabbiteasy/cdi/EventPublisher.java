@@ -2,23 +2,33 @@ package com.zanox.rabbiteasy.cdi;
 
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.ConnectionFactory;
+import com.zanox.rabbiteasy.ChannelPool;
 import com.zanox.rabbiteasy.Message;
 import com.zanox.rabbiteasy.publisher.DeliveryOptions;
 import com.zanox.rabbiteasy.publisher.GenericPublisher;
 import com.zanox.rabbiteasy.publisher.MessagePublisher;
+import com.zanox.rabbiteasy.publisher.PublishTemplate;
 import com.zanox.rabbiteasy.publisher.PublisherReliability;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Publishes events to exchanges of a broker.
+ * <p>Publishes events to exchanges of a broker.</p>
+ *
+ * <p>Events are published by one shared publisher per reliability
+ * level. The publishers borrow their channels from a channel pool,
+ * so channels are reused across threads and event types and idle
+ * channels are closed.</p>
  *
  * @author christian.bick
  */
@@ -32,11 +42,15 @@ public class EventPublisher {
     Map<Class<?>, PublisherConfiguration> publisherConfigurations =
             new HashMap<Class<?>, PublisherConfiguration>();
 
-    ThreadLocal<Map<Class<?>, MessagePublisher>> publishers = new ThreadLocal<Map<Class<?>, MessagePublisher>>();
+    ChannelPool channelPool;
+
+    ConcurrentMap<PublisherReliability, MessagePublisher> publishers =
+            new ConcurrentHashMap<PublisherReliability, MessagePublisher>();
 
     @Inject
     public EventPublisher(ConnectionFactory connectionFactory) {
         this.connectionFactory = connectionFactory;
+        this.channelPool = new ChannelPool(connectionFactory);
     }
 
     /**
@@ -66,7 +80,7 @@ public class EventPublisher {
             return;
         }
         PublisherConfiguration publisherConfiguration = publisherConfigurations.get(eventType);
-        MessagePublisher publisher = providePublisher(publisherConfiguration.reliability, eventType);
+        MessagePublisher publisher = providePublisher(publisherConfiguration.reliability);
         Message message = buildMessage(publisherConfiguration, event);
         try {
             LOGGER.info("Publishing event of type {}", eventType.getSimpleName());
@@ -79,29 +93,46 @@ public class EventPublisher {
     }
 
     /**
-     * Provides a publisher with the specified reliability. Within the same thread, the same
-     * producer instance is provided for the given event type.
+     * Provides a publisher with the specified reliability. The same publisher
+     * instance is provided to all threads as it borrows its channels from the
+     * channel pool.
      *
      * @param reliability The desired publisher reliability
-     * @param eventType The event type
      * @return The provided publisher
      */
-    MessagePublisher providePublisher(PublisherReliability reliability, Class<?> eventType) {
-        Map<Class<?>, MessagePublisher> localPublishers = publishers.get();
-        if (localPublishers == null) {
-            localPublishers = new HashMap<Class<?>, MessagePublisher>();
-            publishers.set(localPublishers);
-        }
-        MessagePublisher publisher = localPublishers.get(eventType);
+    MessagePublisher providePublisher(PublisherReliability reliability) {
+        MessagePublisher publisher = publishers.get(reliability);
         if (publisher == null) {
-            publisher = new GenericPublisher(connectionFactory, reliability);
-            localPublishers.put(eventType, publisher);
+            publisher = new GenericPublisher(channelPool, reliability);
+            MessagePublisher existingPublisher = publishers.putIfAbsent(reliability, publisher);
+            if (existingPublisher != null) {
+                publisher = existingPublisher;
+            }
         }
         return publisher;
     }
 
+    /**
+     * Closes the shared publishers and the channels of the channel
+     * pool when the container destroys the event publisher.
+     */
+    @PreDestroy
+    public void close() {
+        for (MessagePublisher publisher : publishers.values()) {
+            try {
+                publisher.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close event publisher", e);
+            }
+        }
+        publishers.clear();
+        channelPool.close();
+    }
+
     /**
      * A publisher configuration stores all important settings and options used for publishing and event.
+     * The destination, properties and delivery options are compiled into a publish template once, so
+     * publishing an event only encodes the event's body.
      *
      * @author christian.bick
      */
@@ -109,20 +140,27 @@ public class EventPublisher {
         public PublisherConfiguration(String exchange, String routingKey, Boolean persistent,
                                       PublisherReliability reliability, DeliveryOptions deliveryOptions,
                                       AMQP.BasicProperties basicProperties) {
-            this.exchange = exchange;
-            this.routingKey = routingKey;
-            this.persistent = persistent;
+            this(new PublishTemplate(exchange, routingKey, basicProperties,
+                    Boolean.TRUE.equals(persistent), deliveryOptions), reliability);
+        }
+
+        public PublisherConfiguration(PublishTemplate template, PublisherReliability reliability) {
+            this.template = template;
+            this.exchange = template.getExchange();
+            this.routingKey = template.getRoutingKey();
+            this.persistent = template.isPersistent();
             this.reliability = reliability;
-            this.deliveryOptions = deliveryOptions;
-            this.basicProperties = basicProperties;
+            this.deliveryOptions = template.getDeliveryOptions();
+            this.basicProperties = template.getBasicProperties();
         }
 
-        String exchange;
-        String routingKey;
-        Boolean persistent;
-        PublisherReliability reliability;
-        DeliveryOptions deliveryOptions;
-        AMQP.BasicProperties basicProperties;
+        final PublishTemplate template;
+        final String exchange;
+        final String routingKey;
+        final Boolean persistent;
+        final PublisherReliability reliability;
+        final DeliveryOptions deliveryOptions;
+        final AMQP.BasicProperties basicProperties;
     }
 
     /**
@@ -133,19 +171,14 @@ public class EventPublisher {
      * @return The message
      */
     static Message buildMessage(PublisherConfiguration publisherConfiguration, Object event) {
-        Message message = new Message(publisherConfiguration.basicProperties)
-                .exchange(publisherConfiguration.exchange)
-                .routingKey(publisherConfiguration.routingKey);
-        if (publisherConfiguration.persistent) {
-            message.persistent();
-        }
+        Object body = null;
         if (event instanceof ContainsData) {
-            message.body(((ContainsData) event).getData());
+            body = ((ContainsData) event).getData();
         } else if (event instanceof ContainsContent) {
-            message.body(((ContainsContent) event).getContent());
+            body = ((ContainsContent) event).getContent();
         } else if (event instanceof ContainsId) {
-            message.body(((ContainsId) event).getId());
+            body = ((ContainsId) event).getId();
         }
-        return message;
+        return publisherConfiguration.template.createMessage(body);
     }
 }
@@ -12,6 +12,7 @@ import org.powermock.api.easymock.PowerMock;
 import org.powermock.api.easymock.annotation.Mock;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.UUID;
 
@@ -69,6 +70,27 @@ public class EventPublisherTest {
         PowerMock.verifyAll();
     }
 
+    @Test
+    public void closeShouldCloseChannelPool() throws Exception {
+        eventPublisher.addEvent(TestEventOne.class, TEST_CONFIGURATION);
+        channel.basicPublish(eq(TEST_EXCHANGE), eq(TEST_ROUTING_KEY), eq(false), eq(false),
+                anyObject(AMQP.BasicProperties.class), aryEq(new byte[0]));
+        expectLastCall().once();
+        PowerMock.replayAll();
+        eventPublisher.publishEvent(new TestEventOne());
+
+        eventPublisher.close();
+
+        Assert.assertTrue(eventPublisher.publishers.isEmpty());
+        try {
+            eventPublisher.publishEvent(new TestEventOne());
+            Assert.fail("Publishing after close must fail");
+        } catch (IOException e) {
+            Assert.assertEquals("Channel pool is closed", e.getMessage());
+        }
+        PowerMock.verifyAll();
+    }
+
     @Test
     public void buildMessageShouldReturnSameInteger() {
         final int input = 300;
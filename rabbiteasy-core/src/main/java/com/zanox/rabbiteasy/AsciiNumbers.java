@@ -0,0 +1,93 @@
+package com.zanox.rabbiteasy;
+
+import java.nio.charset.Charset;
+
+/**
+ * Parses and formats decimal integers directly on the bytes
+ * of a message body, avoiding intermediate strings.
+ */
+final class AsciiNumbers {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final byte[] MIN_LONG = String.valueOf(Long.MIN_VALUE).getBytes(US_ASCII);
+
+    private AsciiNumbers() {
+    }
+
+    /**
+     * Checks if digits and signs are encoded as single ASCII
+     * bytes in the given charset.
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        return Message.DEFAULT_MESSAGE_CHARSET.equals(charset)
+                || US_ASCII.equals(charset)
+                || ISO_8859_1.equals(charset);
+    }
+
+    static long parseLong(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            throw new RuntimeException("Message is empty");
+        }
+        int end = offset + length;
+        int position = offset;
+        boolean negative = bytes[position] == '-';
+        if (negative || bytes[position] == '+') {
+            position++;
+            if (position == end) {
+                throw new NumberFormatException("Message is not a number");
+            }
+        }
+        // Accumulate negatively as the negative range is larger
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplicationLimit = limit / 10;
+        long result = 0;
+        while (position < end) {
+            int digit = bytes[position++] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Message is not a number");
+            }
+            if (result < multiplicationLimit) {
+                throw new NumberFormatException("Message number is out of range");
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw new NumberFormatException("Message number is out of range");
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    static int parseInt(byte[] bytes, int offset, int length) {
+        long result = parseLong(bytes, offset, length);
+        if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Message number is out of range");
+        }
+        return (int) result;
+    }
+
+    static byte[] format(long value) {
+        if (value == Long.MIN_VALUE) {
+            return MIN_LONG.clone();
+        }
+        boolean negative = value < 0;
+        long remaining = negative ? -value : value;
+        int digits = 1;
+        for (long bound = 10; digits < 19 && remaining >= bound; bound *= 10) {
+            digits++;
+        }
+        int length = negative ? digits + 1 : digits;
+        byte[] bytes = new byte[length];
+        int position = length;
+        do {
+            bytes[--position] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        if (negative) {
+            bytes[0] = '-';
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,15 @@
+package com.zanox.rabbiteasy;
+
+/**
+ * The mode a channel is switched to before it is used for publishing.
+ *
+ * @see ChannelPool
+ */
+public enum ChannelMode {
+    /** Messages are published without confirmation */
+    PLAIN,
+    /** Publisher confirms are enabled (confirm.select) */
+    CONFIRM,
+    /** Transactions are enabled (tx.select) */
+    TRANSACTIONAL
+}
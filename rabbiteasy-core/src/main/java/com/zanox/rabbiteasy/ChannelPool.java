@@ -0,0 +1,370 @@
+package com.zanox.rabbiteasy;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>A thread safe, bounded pool of channels opened with the connections
+ * of a connection factory. Channels are pooled separately for every
+ * {@link ChannelMode} and are switched to their mode only once when
+ * being opened.</p>
+ *
+ * <p>A channel is borrowed for exclusive use and must be returned to the
+ * pool afterwards. Channels which failed must be invalidated instead. If
+ * all channels of a mode are borrowed, borrowing waits until a channel is
+ * returned or the borrow timeout elapsed.</p>
+ *
+ * <p>Returned channels which stayed idle for longer than the maximum idle
+ * time are closed whenever channels are borrowed or returned, so no
+ * background thread is needed.</p>
+ *
+ * <p>Note: Use a {@link SingleConnectionFactory} in order to open all
+ * channels with the same connection.</p>
+ */
+public class ChannelPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChannelPool.class);
+
+    public static final int DEFAULT_MAX_CHANNELS = 16;
+    public static final long DEFAULT_MAX_IDLE_TIME = 60000;
+    public static final long DEFAULT_BORROW_TIMEOUT = 10000;
+
+    private final ConnectionFactory connectionFactory;
+    private final int maxChannels;
+    private final long maxIdleTime;
+    private final long borrowTimeout;
+
+    private final Map<ChannelMode, ModePool> modePools = new EnumMap<ChannelMode, ModePool>(ChannelMode.class);
+    private final ConcurrentMap<Channel, ModePool> borrowedChannels = new ConcurrentHashMap<Channel, ModePool>();
+
+    private volatile boolean closed = false;
+
+    public ChannelPool(ConnectionFactory connectionFactory) {
+        this(connectionFactory, DEFAULT_MAX_CHANNELS, DEFAULT_MAX_IDLE_TIME, DEFAULT_BORROW_TIMEOUT);
+    }
+
+    /**
+     * @param connectionFactory The factory providing the connections to open channels with
+     * @param maxChannels The maximum amount of open channels per mode
+     * @param maxIdleTime The time in milliseconds after which idle channels are closed
+     * @param borrowTimeout The maximum time in milliseconds to wait for a channel
+     */
+    public ChannelPool(ConnectionFactory connectionFactory, int maxChannels, long maxIdleTime, long borrowTimeout) {
+        if (maxChannels < 1) {
+            throw new IllegalArgumentException("At least one channel per mode must be allowed");
+        }
+        this.connectionFactory = connectionFactory;
+        this.maxChannels = maxChannels;
+        this.maxIdleTime = maxIdleTime;
+        this.borrowTimeout = borrowTimeout;
+        for (ChannelMode mode : ChannelMode.values()) {
+            modePools.put(mode, new ModePool(mode));
+        }
+    }
+
+    /**
+     * Gets the factory providing the connections to open channels with.
+     *
+     * @return The connection factory
+     */
+    public ConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    /**
+     * Borrows a channel in the given mode for exclusive use. An idle
+     * channel is reused if available, otherwise a new channel is opened
+     * unless the maximum amount of channels is reached.
+     *
+     * @param mode The channel mode
+     * @return The borrowed channel
+     * @throws IOException if no channel can be opened or none was returned in time
+     */
+    public Channel borrowChannel(ChannelMode mode) throws IOException {
+        ModePool modePool = modePools.get(mode);
+        Channel channel = modePool.borrow();
+        borrowedChannels.put(channel, modePool);
+        return channel;
+    }
+
+    /**
+     * Returns a borrowed channel to the pool. Closed channels are
+     * discarded.
+     *
+     * @param channel The borrowed channel
+     */
+    public void returnChannel(Channel channel) {
+        ModePool modePool = borrowedChannels.remove(channel);
+        if (modePool == null) {
+            LOGGER.warn("Attempt to return a channel which was not borrowed from the pool");
+            return;
+        }
+        modePool.giveBack(channel);
+    }
+
+    /**
+     * Closes and discards a borrowed channel which must not be used any
+     * more, e.g. after publishing a message failed.
+     *
+     * @param channel The borrowed channel
+     */
+    public void invalidateChannel(Channel channel) {
+        ModePool modePool = borrowedChannels.remove(channel);
+        if (modePool == null) {
+            LOGGER.warn("Attempt to invalidate a channel which was not borrowed from the pool");
+            return;
+        }
+        modePool.discard(channel);
+    }
+
+    /**
+     * Closes all channels which stayed idle for longer than
+     * the maximum idle time.
+     */
+    public void evictIdleChannels() {
+        for (ModePool modePool : modePools.values()) {
+            closeChannels(modePool.evictIdle());
+        }
+    }
+
+    /**
+     * Gets the amount of idle channels in the given mode.
+     *
+     * @param mode The channel mode
+     * @return The amount of idle channels
+     */
+    public int getIdleChannels(ChannelMode mode) {
+        return modePools.get(mode).getIdleChannels();
+    }
+
+    /**
+     * Gets the amount of open channels in the given mode,
+     * borrowed or idle.
+     *
+     * @param mode The channel mode
+     * @return The amount of open channels
+     */
+    public int getOpenChannels(ChannelMode mode) {
+        return modePools.get(mode).getOpenChannels();
+    }
+
+    /**
+     * Closes all idle channels. Borrowed channels are closed
+     * when being returned. Channels cannot be borrowed any more.
+     */
+    public void close() {
+        closed = true;
+        for (ModePool modePool : modePools.values()) {
+            closeChannels(modePool.clear());
+        }
+    }
+
+    static void closeChannels(List<Channel> channels) {
+        for (Channel channel : channels) {
+            try {
+                channel.close();
+            } catch (Exception e) {
+                // Ignore exception: In this case the channel is for sure not usable any more
+                LOGGER.debug("Aborted closing pooled channel (already closing)");
+            }
+        }
+    }
+
+    private static class IdleChannel {
+
+        private final Channel channel;
+        private final long idleSince;
+
+        private IdleChannel(Channel channel, long idleSince) {
+            this.channel = channel;
+            this.idleSince = idleSince;
+        }
+    }
+
+    /**
+     * Pools the channels of one mode. The most recently returned
+     * channels are kept at the head of the idle channels, so the
+     * least recently used channels become idle for long enough to be
+     * evicted.
+     */
+    private class ModePool {
+
+        private final ChannelMode mode;
+        private final LinkedList<IdleChannel> idleChannels = new LinkedList<IdleChannel>();
+        private int openChannels = 0;
+
+        private final Lock poolLock = new ReentrantLock();
+        private final Condition channelAvailable = poolLock.newCondition();
+
+        private ModePool(ChannelMode mode) {
+            this.mode = mode;
+        }
+
+        Channel borrow() throws IOException {
+            long deadline = System.currentTimeMillis() + borrowTimeout;
+            List<Channel> evictedChannels;
+            Channel channel = null;
+            poolLock.lock();
+            try {
+                evictedChannels = evictIdle();
+                while (channel == null) {
+                    if (closed) {
+                        throw new IOException("Channel pool is closed");
+                    }
+                    IdleChannel idleChannel = idleChannels.pollFirst();
+                    if (idleChannel != null) {
+                        if (idleChannel.channel.isOpen()) {
+                            channel = idleChannel.channel;
+                        } else {
+                            openChannels--;
+                        }
+                    } else if (openChannels < maxChannels) {
+                        openChannels++;
+                        break;
+                    } else {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            throw new IOException("Timed out waiting for a channel in mode " + mode);
+                        }
+                        try {
+                            channelAvailable.await(remaining, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IOException("Interrupted while waiting for a channel in mode " + mode);
+                        }
+                    }
+                }
+            } finally {
+                poolLock.unlock();
+            }
+            closeChannels(evictedChannels);
+            if (channel != null) {
+                return channel;
+            }
+            return open();
+        }
+
+        private Channel open() throws IOException {
+            try {
+                Channel channel = connectionFactory.newConnection().createChannel();
+                if (connectionFactory instanceof SingleConnectionFactory) {
+                    ((SingleConnectionFactory) connectionFactory).monitorFlow(channel);
+                }
+                if (mode == ChannelMode.CONFIRM) {
+                    channel.confirmSelect();
+                } else if (mode == ChannelMode.TRANSACTIONAL) {
+                    channel.txSelect();
+                }
+                LOGGER.debug("Opened pooled channel in mode {}", mode);
+                return channel;
+            } catch (IOException e) {
+                poolLock.lock();
+                try {
+                    openChannels--;
+                    channelAvailable.signalAll();
+                } finally {
+                    poolLock.unlock();
+                }
+                throw e;
+            }
+        }
+
+        void giveBack(Channel channel) {
+            List<Channel> channelsToClose;
+            poolLock.lock();
+            try {
+                if (closed || ! channel.isOpen()) {
+                    openChannels--;
+                    channelsToClose = Collections.singletonList(channel);
+                } else {
+                    idleChannels.addFirst(new IdleChannel(channel, System.currentTimeMillis()));
+                    channelsToClose = evictIdle();
+                }
+                channelAvailable.signalAll();
+            } finally {
+                poolLock.unlock();
+            }
+            closeChannels(channelsToClose);
+        }
+
+        void discard(Channel channel) {
+            poolLock.lock();
+            try {
+                openChannels--;
+                channelAvailable.signalAll();
+            } finally {
+                poolLock.unlock();
+            }
+            closeChannels(Collections.singletonList(channel));
+        }
+
+        List<Channel> evictIdle() {
+            poolLock.lock();
+            try {
+                long evictionTime = System.currentTimeMillis() - maxIdleTime;
+                if (idleChannels.isEmpty() || idleChannels.getLast().idleSince >= evictionTime) {
+                    return Collections.emptyList();
+                }
+                List<Channel> evictedChannels = new ArrayList<Channel>();
+                while (! idleChannels.isEmpty() && idleChannels.getLast().idleSince < evictionTime) {
+                    evictedChannels.add(idleChannels.removeLast().channel);
+                    openChannels--;
+                }
+                LOGGER.debug("Evicted {} idle channels in mode {}", evictedChannels.size(), mode);
+                return evictedChannels;
+            } finally {
+                poolLock.unlock();
+            }
+        }
+
+        List<Channel> clear() {
+            poolLock.lock();
+            try {
+                List<Channel> channels = new ArrayList<Channel>(idleChannels.size());
+                for (IdleChannel idleChannel : idleChannels) {
+                    channels.add(idleChannel.channel);
+                }
+                openChannels -= idleChannels.size();
+                idleChannels.clear();
+                channelAvailable.signalAll();
+                return channels;
+            } finally {
+                poolLock.unlock();
+            }
+        }
+
+        int getIdleChannels() {
+            poolLock.lock();
+            try {
+                return idleChannels.size();
+            } finally {
+                poolLock.unlock();
+            }
+        }
+
+        int getOpenChannels() {
+            poolLock.lock();
+            try {
+                return openChannels;
+            } finally {
+                poolLock.unlock();
+            }
+        }
+    }
+}
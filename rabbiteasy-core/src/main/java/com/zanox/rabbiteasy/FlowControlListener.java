@@ -0,0 +1,26 @@
+package com.zanox.rabbiteasy;
+
+import com.rabbitmq.client.Connection;
+
+/**
+ * A flow control listener is used by a connection factory to
+ * notify clients when the broker blocks or unblocks publishing.
+ */
+public interface FlowControlListener {
+
+    /**
+     * Called when the broker stopped the flow of published
+     * messages, e.g. because it runs out of memory.
+     *
+     * @param connection The blocked connection
+     */
+    void onConnectionBlocked(Connection connection);
+
+    /**
+     * Called when the broker resumed the flow of published
+     * messages after the connection was blocked.
+     *
+     * @param connection The unblocked connection
+     */
+    void onConnectionUnblocked(Connection connection);
+}
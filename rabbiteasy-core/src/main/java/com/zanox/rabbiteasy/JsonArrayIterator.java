@@ -0,0 +1,73 @@
+package com.zanox.rabbiteasy;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectReader;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the elements of a JSON array by binding one element
+ * after the other while parsing. Only the current element is held in
+ * memory. A body not being an array is iterated as single element.
+ */
+class JsonArrayIterator<T> implements Iterator<T> {
+
+    private final JsonParser parser;
+    private final ObjectReader reader;
+    private final boolean array;
+    private JsonToken nextToken;
+
+    JsonArrayIterator(JsonParser parser, ObjectReader reader) throws IOException {
+        this.parser = parser;
+        this.reader = reader;
+        JsonToken firstToken = parser.nextToken();
+        array = firstToken == JsonToken.START_ARRAY;
+        nextToken = array ? null : firstToken;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextToken == null) {
+            try {
+                nextToken = parser.nextToken();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (nextToken == null || nextToken == JsonToken.END_ARRAY) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (! hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            T element = reader.<T>readValue(parser);
+            nextToken = array ? null : JsonToken.END_ARRAY;
+            return element;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Elements of a message body cannot be removed");
+    }
+
+    private void close() {
+        try {
+            parser.close();
+        } catch (IOException e) {
+            // Nothing to release as the parser reads from memory
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.zanox.rabbiteasy;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectReader;
+import org.codehaus.jackson.map.ObjectWriter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Process wide registry holding the JSON object mapper used to
+ * serialize and deserialize message bodies.</p>
+ *
+ * <p>Creating an object mapper is expensive as every mapper builds
+ * its own serializer and deserializer caches. The registry therefore
+ * shares one thread safe mapper and caches an immutable reader and
+ * writer for every type which has been read or written once.</p>
+ */
+public final class JsonCodecRegistry {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final ConcurrentMap<Class<?>, ObjectReader> READERS =
+            new ConcurrentHashMap<Class<?>, ObjectReader>();
+    private static final ConcurrentMap<Class<?>, ObjectWriter> WRITERS =
+            new ConcurrentHashMap<Class<?>, ObjectWriter>();
+
+    private JsonCodecRegistry() {
+    }
+
+    /**
+     * <p>Gets the shared object mapper.</p>
+     *
+     * <p>Note: The mapper must only be configured before the first message
+     * was read or written as readers and writers are cached afterwards.</p>
+     *
+     * @return The shared object mapper
+     */
+    public static ObjectMapper getObjectMapper() {
+        return OBJECT_MAPPER;
+    }
+
+    /**
+     * Gets the cached reader deserializing JSON to the given type.
+     *
+     * @param type The type to deserialize to
+     * @return The reader for the given type
+     */
+    public static ObjectReader readerFor(Class<?> type) {
+        ObjectReader reader = READERS.get(type);
+        if (reader == null) {
+            reader = OBJECT_MAPPER.reader(type);
+            ObjectReader existingReader = READERS.putIfAbsent(type, reader);
+            if (existingReader != null) {
+                reader = existingReader;
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * Gets the cached writer serializing objects of the given type to JSON.
+     *
+     * @param type The type to serialize from
+     * @return The writer for the given type
+     */
+    public static ObjectWriter writerFor(Class<?> type) {
+        ObjectWriter writer = WRITERS.get(type);
+        if (writer == null) {
+            writer = OBJECT_MAPPER.writerWithType(type);
+            ObjectWriter existingWriter = WRITERS.putIfAbsent(type, writer);
+            if (existingWriter != null) {
+                writer = existingWriter;
+            }
+        }
+        return writer;
+    }
+
+}
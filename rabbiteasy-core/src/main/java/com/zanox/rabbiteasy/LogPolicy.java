@@ -0,0 +1,81 @@
+package com.zanox.rabbiteasy;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Decides whether the statements logged for each published or
+ * consumed message are logged at all: Never, for every Nth message
+ * only, or for every message.</p>
+ *
+ * <p>Callers check the policy before logging, so no log arguments are
+ * boxed or allocated if the message is not logged. Sampled policies
+ * count the messages of every publisher or consumer they are set on
+ * together, so every publisher or consumer should get its own
+ * sampled policy.</p>
+ */
+public final class LogPolicy {
+
+    /**
+     * Never logs per message statements.
+     */
+    public static final LogPolicy OFF = new LogPolicy(0);
+
+    /**
+     * Logs per message statements for every message.
+     */
+    public static final LogPolicy FULL = new LogPolicy(1);
+
+    private final int sampleRate;
+    private final AtomicLong messageCount = new AtomicLong();
+
+    private LogPolicy(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Creates a policy logging per message statements for
+     * every Nth message only.
+     *
+     * @param sampleRate The amount of messages per logged message
+     * @return The sampled policy
+     */
+    public static LogPolicy sampled(int sampleRate) {
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("Sample rate must be at least 1");
+        }
+        return sampleRate == 1 ? FULL : new LogPolicy(sampleRate);
+    }
+
+    /**
+     * Checks if the statements of the next message are logged by the
+     * given logger at level INFO. Must be called once per message.
+     *
+     * @param logger The logger to log with
+     * @return True if the statements are logged
+     */
+    public boolean isInfoEnabled(Logger logger) {
+        if (sampleRate == 0 || ! logger.isInfoEnabled()) {
+            return false;
+        }
+        return sampleRate == 1 || messageCount.getAndIncrement() % sampleRate == 0;
+    }
+
+    /**
+     * Gets the amount of messages per logged message.
+     *
+     * @return The sample rate or 0 if logging is off
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public String toString() {
+        if (sampleRate == 0) {
+            return "OFF";
+        }
+        return sampleRate == 1 ? "FULL" : "SAMPLED(1/" + sampleRate + ")";
+    }
+}
@@ -3,14 +3,21 @@ package com.zanox.rabbiteasy;
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.AMQP.BasicProperties;
 import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.MessageProperties;
 import com.zanox.rabbiteasy.publisher.DeliveryOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * A message encapsulates the delivery content of a delivery from a broker. It wraps the body and
@@ -29,48 +36,202 @@ public class Message {
     public static final String TEXT_PLAIN = "text/plain";
     public static final String APPLICATION_JSON = "application/json";
 
+    private static final byte[] EMPTY_BODY = new byte[0];
+
     private MessageReader messageReader;
     private MessageWriter messageWriter;
 
-	private byte[] bodyContent = new byte[0];
+	private byte[] bodyContent = EMPTY_BODY;
 	private BasicProperties basicProperties;
+	private BasicProperties.Builder propertiesBuilder;
+	private Map<String, Object> pendingHeaders;
 	private String routingKey = "";
 	private String exchange = "";
 	private long deliveryTag;
 
+    private Map<Class<?>, Object> decodedBodies;
+
+    private MessagePool pool;
+    private boolean released;
+
     public Message() {
         this(MessageProperties.BASIC);
     }
 
     public Message(BasicProperties basicProperties) {
         this.basicProperties = basicProperties;
-        messageReader = new MessageReader(this);
-        messageWriter = new MessageWriter(this);
+    }
+
+    /**
+     * Creates a message for a delivery received from a broker. The
+     * body is wrapped as is and helpers to read or write the message
+     * are only created once the message is read or written.
+     *
+     * @param envelope The delivery envelope
+     * @param basicProperties The message properties
+     * @param bodyContent The body content as bytes
+     */
+    public Message(Envelope envelope, BasicProperties basicProperties, byte[] bodyContent) {
+        this.basicProperties = basicProperties;
+        this.exchange = envelope.getExchange();
+        this.routingKey = envelope.getRoutingKey();
+        this.deliveryTag = envelope.getDeliveryTag();
+        if (bodyContent != null) {
+            this.bodyContent = bodyContent;
+        }
+    }
+
+    /**
+     * Creates a message recycled by the given pool.
+     *
+     * @param pool The pool the message is returned to on release
+     */
+    Message(MessagePool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Reinitializes a recycled message for a new delivery.
+     */
+    void wrap(Envelope envelope, BasicProperties basicProperties, byte[] bodyContent) {
+        this.basicProperties = basicProperties;
+        this.exchange = envelope.getExchange();
+        this.routingKey = envelope.getRoutingKey();
+        this.deliveryTag = envelope.getDeliveryTag();
+        this.bodyContent = bodyContent != null ? bodyContent : EMPTY_BODY;
+        released = false;
+    }
+
+    private MessageReader reader() {
+        if (messageReader == null) {
+            messageReader = new MessageReader(this);
+        }
+        return messageReader;
+    }
+
+    private MessageWriter writer() {
+        if (messageWriter == null) {
+            messageWriter = new MessageWriter(this);
+        }
+        return messageWriter;
     }
 
 	/**
-	 * Gets the basic message properties (e.g. content encoding)
+	 * <p>Gets the basic message properties (e.g. content encoding)</p>
+	 *
+	 * <p>Property changes made since the last call are collected
+	 * and only materialized on this call.</p>
 	 * 
 	 * @return The message properties
 	 */
 	public BasicProperties getBasicProperties() {
+		checkNotReleased();
+		if (propertiesBuilder != null) {
+			if (pendingHeaders != null) {
+				propertiesBuilder.headers(pendingHeaders);
+				pendingHeaders = null;
+			}
+			basicProperties = propertiesBuilder.build();
+			propertiesBuilder = null;
+		}
 		return basicProperties;
 	}
 
+    /**
+     * Gets the builder collecting property changes
+     * until the properties are materialized again.
+     *
+     * @return The properties builder
+     */
+    private BasicProperties.Builder propertiesBuilder() {
+        if (propertiesBuilder == null) {
+            propertiesBuilder = basicProperties.builder();
+        }
+        return propertiesBuilder;
+    }
+
     /**
      * Gets the body content in its rare byte
-     * representation.
+     * representation. A compressed body is returned
+     * as is.
      *
      * @return The body content as bytes
      */
     public byte[] getBodyContent() {
+        checkNotReleased();
         return bodyContent;
     }
 
+    /**
+     * Gets a read-only view on the body content. The
+     * body content is not copied. A compressed body is
+     * decompressed first, like for {@link #getBodyAs(Class)}.
+     *
+     * @see MessageReader#readBodyContent()
+     * @return The body content as read-only buffer
+     */
+    public ByteBuffer getBodyBuffer() {
+        checkNotReleased();
+        return ByteBuffer.wrap(reader().readBodyContent()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Gets a read-only view on the given range of the
+     * body content. The range is not copied and the
+     * returned buffer starts at position zero. The range
+     * refers to the decompressed body if it is compressed.
+     *
+     * @see MessageReader#readBodyContent()
+     * @param offset The offset of the range within the body
+     * @param length The length of the range
+     * @return The range of the body content as read-only buffer
+     */
+    public ByteBuffer getBodyBuffer(int offset, int length) {
+        checkNotReleased();
+        return ByteBuffer.wrap(reader().readBodyContent(), offset, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Gets a stream reading the body content. The
+     * body content is not copied. A compressed body is
+     * decompressed first, like for {@link #getBodyAs(Class)}.
+     *
+     * @see MessageReader#readBodyContent()
+     * @return The body content as stream
+     */
+    public InputStream getBodyStream() {
+        checkNotReleased();
+        return new ByteArrayInputStream(reader().readBodyContent());
+    }
+
+    /**
+     * Gets a stream reading the given range of the
+     * body content. The range is not copied. The range
+     * refers to the decompressed body if it is compressed.
+     *
+     * @see MessageReader#readBodyContent()
+     * @param offset The offset of the range within the body
+     * @param length The length of the range
+     * @return The range of the body content as stream
+     */
+    public InputStream getBodyStream(int offset, int length) {
+        checkNotReleased();
+        return new ByteArrayInputStream(reader().readBodyContent(), offset, length);
+    }
+
     /**
      * <p>Gets the message body in the representation of the
      * specified Java type.</p>
      *
+     * <p>The body is decoded on the first call for a type and the
+     * result is kept for subsequent calls with the same type until
+     * the body, content type or content encoding changes. Reading
+     * only the properties, exchange or routing key of a message never
+     * decodes its body.</p>
+     *
+     * <p>Note: Subsequent calls return the same instance, so changes
+     * to a returned object are visible to all readers of the message.</p>
+     *
      * <p>Examples:</p>
      * <p>Body as String: getBodyAs(String.class)</p>
      * <p>Body as Integer: getBodyAs(Integer.class)</p>
@@ -79,8 +240,76 @@ public class Message {
      * @param type The desired Java type
      * @return The body a the given Java type.
      */
+    @SuppressWarnings("unchecked")
     public <T> T getBodyAs(Class<T> type) {
-        return messageReader.readBodyAs(type);
+        checkNotReleased();
+        if (decodedBodies == null) {
+            decodedBodies = new HashMap<Class<?>, Object>(4);
+        } else if (decodedBodies.containsKey(type)) {
+            return (T) decodedBodies.get(type);
+        }
+        T body = reader().readBodyAs(type);
+        decodedBodies.put(type, body);
+        return body;
+    }
+
+    /**
+     * <p>Gets the message body, expected to be a JSON array, as
+     * sequence of elements of the specified Java type.</p>
+     *
+     * <p>Elements are parsed on demand while iterating, so large
+     * arrays can be processed with constant memory and processing
+     * starts before the whole body is parsed.</p>
+     *
+     * @see MessageReader#readBodyAsIterator(Class)
+     * @param type The desired Java type of the elements
+     * @return An iterator over the elements of the body
+     */
+    public <T> Iterator<T> streamBodyAs(Class<T> type) {
+        checkNotReleased();
+        return reader().readBodyAsIterator(type);
+    }
+
+    /**
+     * <p>Gets the given range of the message body in the representation
+     * of the specified Java type, e.g. to extract a sub-message from a
+     * larger body without copying it.</p>
+     *
+     * <p>In contrast to {@link #getBodyAs(Class)}, the result is not kept.</p>
+     *
+     * @see MessageReader#readBodyAs(Class, int, int)
+     * @param type The desired Java type
+     * @param offset The offset of the range within the body
+     * @param length The length of the range
+     * @return The range of the body as the given Java type
+     */
+    public <T> T getBodyAs(Class<T> type, int offset, int length) {
+        checkNotReleased();
+        return reader().readBodyAs(type, offset, length);
+    }
+
+    /**
+     * Gets the message body as long. The digits are parsed
+     * directly from the body for ASCII compatible charsets.
+     *
+     * @see MessageReader#readBodyAsLong()
+     * @return The body as long
+     */
+    public long getBodyAsLong() {
+        checkNotReleased();
+        return reader().readBodyAsLong();
+    }
+
+    /**
+     * Gets the message body as int. The digits are parsed
+     * directly from the body for ASCII compatible charsets.
+     *
+     * @see MessageReader#readBodyAsInt()
+     * @return The body as int
+     */
+    public int getBodyAsInt() {
+        checkNotReleased();
+        return reader().readBodyAsInt();
     }
 
     /**
@@ -89,6 +318,7 @@ public class Message {
      * @return The exchange
      */
 	public String getExchange() {
+		checkNotReleased();
 		return this.exchange;
 	}
 
@@ -101,6 +331,7 @@ public class Message {
      * @return The routing key
      */
 	public String getRoutingKey() {
+		checkNotReleased();
 		return this.routingKey;
 	}
 
@@ -111,6 +342,7 @@ public class Message {
      * @return The delivery tag
      */
 	public long getDeliveryTag() {
+		checkNotReleased();
 		return deliveryTag;
 	}
 
@@ -121,6 +353,7 @@ public class Message {
      * @return The modified message
      */
     public Message exchange(String exchange) {
+        checkNotReleased();
         this.exchange = exchange;
         return this;
     }
@@ -148,6 +381,7 @@ public class Message {
      * @return The modified message
      */
     public Message routingKey(String routingKey) {
+        checkNotReleased();
         this.routingKey = routingKey;
         return this;
     }
@@ -159,7 +393,9 @@ public class Message {
 	 * @return The modified message
 	 */
 	public Message body(byte[] bodyContent) {
+		checkNotReleased();
 		this.bodyContent = bodyContent;
+		clearDecodedBodies();
 		return this;
 	}
 
@@ -172,7 +408,48 @@ public class Message {
      * @param body The message body object
      */
     public <T> Message body(T body) {
-        messageWriter.writeBody(body);
+        checkNotReleased();
+        writer().writeBody(body);
+        return this;
+    }
+
+    /**
+     * Adds the given number as body to the message. The
+     * digits are formatted directly as bytes.
+     *
+     * @see MessageWriter#writeBodyFromLong(long, Charset)
+     * @param body The message body
+     * @return The modified message
+     */
+    public Message body(long body) {
+        checkNotReleased();
+        writer().writeBodyFromLong(body, DEFAULT_MESSAGE_CHARSET);
+        return this;
+    }
+
+    /**
+     * Adds the given number as body to the message. The
+     * digits are formatted directly as bytes.
+     *
+     * @see MessageWriter#writeBodyFromLong(long, Charset)
+     * @param body The message body
+     * @return The modified message
+     */
+    public Message body(int body) {
+        checkNotReleased();
+        writer().writeBodyFromLong(body, DEFAULT_MESSAGE_CHARSET);
+        return this;
+    }
+
+    /**
+     * Adds the given character as body to the message.
+     *
+     * @param body The message body
+     * @return The modified message
+     */
+    public Message body(char body) {
+        checkNotReleased();
+        writer().writeBody(Character.valueOf(body));
         return this;
     }
 
@@ -183,7 +460,37 @@ public class Message {
      * @see MessageWriter#writeBody(Object, Charset)
      */
     public <T> Message body(T body, Charset charset) {
-        messageWriter.writeBody(body, charset);
+        checkNotReleased();
+        writer().writeBody(body, charset);
+        return this;
+    }
+
+    /**
+     * Serializes and adds the elements of the given iterator
+     * as JSON array body to the message. Elements are serialized
+     * one after the other while iterating.
+     *
+     * @see MessageWriter#writeBodyFromIterator(Iterator, Charset)
+     * @param elements The elements of the body
+     * @return The modified message
+     */
+    public Message streamBody(Iterator<?> elements) {
+        checkNotReleased();
+        writer().writeBodyFromIterator(elements, DEFAULT_MESSAGE_CHARSET);
+        return this;
+    }
+
+    /**
+     * Encodes and adds the given object as body to
+     * the message using the codec registered for the
+     * given content type.
+     *
+     * @see MessageWriter#writeBody(Object, String, Charset)
+     * @see com.zanox.rabbiteasy.codec.MessageCodecRegistry
+     */
+    public <T> Message body(T body, String contentType) {
+        checkNotReleased();
+        writer().writeBody(body, contentType, DEFAULT_MESSAGE_CHARSET);
         return this;
     }
 
@@ -200,9 +507,8 @@ public class Message {
 	 * @return The modified message
 	 */
 	public Message persistent() {
-        basicProperties = basicProperties.builder()
-                .deliveryMode(DELIVERY_MODE_PERSISTENT)
-                .build();
+        checkNotReleased();
+        propertiesBuilder().deliveryMode(DELIVERY_MODE_PERSISTENT);
 		return this;
 	}
 
@@ -219,6 +525,7 @@ public class Message {
 	 * @return The modified message
 	 */
 	public Message deliveryTag(long deliveryTag) {
+		checkNotReleased();
 		this.deliveryTag = deliveryTag;
 		return this;
 	}
@@ -230,9 +537,9 @@ public class Message {
      * @return The modified message
      */
     public Message contentEncoding(String charset) {
-        basicProperties = basicProperties.builder()
-                .contentEncoding(charset)
-                .build();
+        checkNotReleased();
+        propertiesBuilder().contentEncoding(charset);
+        clearDecodedBodies();
         return this;
     }
 
@@ -243,12 +550,93 @@ public class Message {
      * @return The modified message
      */
     public Message contentType(String contentType) {
-        basicProperties = basicProperties.builder()
-                .contentType(contentType)
-                .build();
+        checkNotReleased();
+        propertiesBuilder().contentType(contentType);
+        clearDecodedBodies();
+        return this;
+    }
+
+    /**
+     * Sets a header of this message. A header set
+     * to null is removed from the message.
+     *
+     * @param name The header name
+     * @param value The header value
+     * @return The modified message
+     */
+    public Message header(String name, Object value) {
+        checkNotReleased();
+        if (pendingHeaders == null) {
+            pendingHeaders = new HashMap<String, Object>();
+            if (basicProperties.getHeaders() != null) {
+                pendingHeaders.putAll(basicProperties.getHeaders());
+            }
+            propertiesBuilder();
+        }
+        if (value == null) {
+            pendingHeaders.remove(name);
+        } else {
+            pendingHeaders.put(name, value);
+        }
+        clearDecodedBodies();
         return this;
     }
 
+    /**
+     * Gets the value of a header of this message.
+     *
+     * @param name The header name
+     * @return The header value or null if the header is not set
+     */
+    public Object getHeader(String name) {
+        checkNotReleased();
+        Map<String, Object> headers = pendingHeaders != null ? pendingHeaders : basicProperties.getHeaders();
+        return headers == null ? null : headers.get(name);
+    }
+
+    /**
+     * <p>Releases a message taken from a {@link MessagePool} so
+     * it can be reused for another delivery. The message must not
+     * be used any more after being released.</p>
+     *
+     * <p>Releasing a message which is not pooled has no effect,
+     * neither has releasing a message twice.</p>
+     */
+    public void release() {
+        if (pool == null || released) {
+            return;
+        }
+        released = true;
+        basicProperties = null;
+        propertiesBuilder = null;
+        pendingHeaders = null;
+        bodyContent = EMPTY_BODY;
+        exchange = "";
+        routingKey = "";
+        deliveryTag = 0;
+        clearDecodedBodies();
+        if (messageReader != null) {
+            messageReader.clear();
+        }
+        pool.recycle(this);
+    }
+
+    private void checkNotReleased() {
+        if (released) {
+            throw new IllegalStateException("Message was released and must not be used any more");
+        }
+    }
+
+    /**
+     * Discards all bodies decoded so far as they may
+     * not match the message content any more.
+     */
+    void clearDecodedBodies() {
+        if (decodedBodies != null) {
+            decodedBodies.clear();
+        }
+    }
+
     /**
      * Publishes a message via the given channel.
      *
@@ -267,19 +655,52 @@ public class Message {
      * @throws IOException
      */
     public void publish(Channel channel, DeliveryOptions deliveryOptions) throws IOException {
+        publish(channel, deliveryOptions, LogPolicy.FULL);
+    }
+
+    /**
+     * Publishes a message via the given channel while using the specified delivery options.
+     * Publishing is only logged if the given log policy decides so.
+     *
+     * @param channel The channel used to publish the message on
+     * @param deliveryOptions The delivery options to use
+     * @param logPolicy The policy deciding if publishing is logged
+     * @throws IOException
+     */
+    public void publish(Channel channel, DeliveryOptions deliveryOptions, LogPolicy logPolicy) throws IOException {
+        publish(channel, deliveryOptions, logPolicy.isInfoEnabled(LOGGER));
+    }
+
+    /**
+     * Publishes a message via the given channel while using the specified delivery options.
+     * Used by publishers which already asked their log policy whether the message is logged.
+     *
+     * @param channel The channel used to publish the message on
+     * @param deliveryOptions The delivery options to use
+     * @param logged True if publishing the message is logged
+     * @throws IOException
+     */
+    public void publish(Channel channel, DeliveryOptions deliveryOptions, boolean logged) throws IOException {
+        checkNotReleased();
+        BasicProperties properties = getBasicProperties();
         // Assure to have a timestamp
-        if (basicProperties.getTimestamp() == null) {
-            basicProperties.builder().timestamp(new Date());
+        if (properties.getTimestamp() == null) {
+            properties.builder().timestamp(new Date());
         }
 
         boolean mandatory = deliveryOptions == DeliveryOptions.MANDATORY;
         boolean immediate = deliveryOptions == DeliveryOptions.IMMEDIATE;
 
-        LOGGER.info("Publishing message to exchange '{}' with routing key '{}' (deliveryOptions: {}, persistent: {})",
-                new Object[] { exchange, routingKey, deliveryOptions, basicProperties.getDeliveryMode() == 2 });
+        logged = logged && LOGGER.isInfoEnabled();
+        if (logged) {
+            LOGGER.info("Publishing message to exchange '{}' with routing key '{}' (deliveryOptions: {}, persistent: {})",
+                    new Object[] { exchange, routingKey, deliveryOptions, properties.getDeliveryMode() == 2 });
+        }
 
-        channel.basicPublish(exchange, routingKey, mandatory, immediate, basicProperties, bodyContent);
-        LOGGER.info("Successfully published message to exchange '{}' with routing key '{}'", exchange, routingKey);
+        channel.basicPublish(exchange, routingKey, mandatory, immediate, properties, bodyContent);
+        if (logged) {
+            LOGGER.info("Successfully published message to exchange '{}' with routing key '{}'", exchange, routingKey);
+        }
     }
 
 }
@@ -0,0 +1,75 @@
+package com.zanox.rabbiteasy;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Envelope;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>A bounded pool of messages wrapping deliveries of one channel.</p>
+ *
+ * <p>Messages acquired from the pool are returned to it by calling
+ * {@link Message#release()}. If the pool is full, released messages are
+ * left to the garbage collector. If the pool is empty, new messages are
+ * created.</p>
+ *
+ * <p>In debug mode, released messages are never reused. Any later access
+ * to a released message therefore reliably fails with an
+ * {@link IllegalStateException} instead of silently reading another
+ * delivery.</p>
+ *
+ * <p>Note: Body buffers are not pooled as they are allocated by the
+ * AMQP client for every delivery.</p>
+ */
+public class MessagePool {
+
+    private final BlockingQueue<Message> messages;
+    private final boolean debug;
+
+    /**
+     * @param capacity The maximum number of released messages kept for reuse
+     * @param debug True to detect usage of released messages
+     */
+    public MessagePool(int capacity, boolean debug) {
+        this.messages = new ArrayBlockingQueue<Message>(capacity);
+        this.debug = debug;
+    }
+
+    /**
+     * Takes a released message from the pool, or creates
+     * a new one, wrapping the given delivery.
+     *
+     * @param envelope The delivery envelope
+     * @param basicProperties The message properties
+     * @param bodyContent The body content as bytes
+     * @return The message wrapping the delivery
+     */
+    public Message acquire(Envelope envelope, BasicProperties basicProperties, byte[] bodyContent) {
+        Message message = messages.poll();
+        if (message == null) {
+            message = new Message(this);
+        }
+        message.wrap(envelope, basicProperties, bodyContent);
+        return message;
+    }
+
+    /**
+     * Gets the number of released messages available for reuse.
+     *
+     * @return The number of available messages
+     */
+    public int getAvailableMessages() {
+        return messages.size();
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    void recycle(Message message) {
+        if (! debug) {
+            messages.offer(message);
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package com.zanox.rabbiteasy;
 
 import com.rabbitmq.client.AMQP.BasicProperties;
+import com.zanox.rabbiteasy.codec.MessageCodec;
+import com.zanox.rabbiteasy.codec.MessageCodecRegistry;
+import com.zanox.rabbiteasy.compression.BodyCompressor;
+import com.zanox.rabbiteasy.compression.CompressionRegistry;
 import org.codehaus.jackson.JsonParseException;
-import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.map.util.JSONPObject;
 
 import javax.xml.bind.JAXBContext;
@@ -18,6 +23,8 @@ import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.Map;
 
 /**
  * Provides utilities for an easy access of message
@@ -30,6 +37,9 @@ public class MessageReader {
 
     private Message message;
 
+    private byte[] compressedBodyContent;
+    private byte[] decompressedBodyContent;
+
     public MessageReader(Message message) {
         this.message = message;
     }
@@ -55,24 +65,128 @@ public class MessageReader {
     }
 
     /**
-     * Extracts the message body and interprets it
-     * as the given Java type
+     * Extracts the message body's content type from
+     * the message properties.
+     *
+     * @return The content type or null if not given
+     */
+    public String readContentType() {
+        BasicProperties basicProperties = message.getBasicProperties();
+        if (basicProperties == null) {
+            return null;
+        }
+        return basicProperties.getContentType();
+    }
+
+    /**
+     * Extracts the name of the algorithm the message
+     * body is compressed with from the message headers.
+     *
+     * @see CompressionRegistry#COMPRESSION_HEADER
+     * @return The compression algorithm or null if the body is not compressed
+     */
+    public String readCompression() {
+        BasicProperties basicProperties = message.getBasicProperties();
+        if (basicProperties == null) {
+            return null;
+        }
+        Map<String, Object> headers = basicProperties.getHeaders();
+        if (headers == null) {
+            return null;
+        }
+        Object compression = headers.get(CompressionRegistry.COMPRESSION_HEADER);
+        return compression == null ? null : compression.toString();
+    }
+
+    /**
+     * <p>Extracts the message body content in its raw byte
+     * representation, decompressed if the body is compressed.</p>
+     *
+     * <p>The decompressed content is kept until the message
+     * body changes.</p>
+     *
+     * @return The uncompressed body content
+     */
+    public byte[] readBodyContent() {
+        byte[] bodyContent = message.getBodyContent();
+        String compression = readCompression();
+        if (compression == null) {
+            return bodyContent;
+        }
+        if (bodyContent == compressedBodyContent) {
+            return decompressedBodyContent;
+        }
+        BodyCompressor compressor = CompressionRegistry.getCompressor(compression);
+        if (compressor == null) {
+            throw new IllegalStateException("No compressor registered for " + compression);
+        }
+        try {
+            decompressedBodyContent = compressor.decompress(bodyContent, 0, bodyContent.length);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        compressedBodyContent = bodyContent;
+        return decompressedBodyContent;
+    }
+
+    /**
+     * Discards the decompressed body content kept so far.
+     */
+    void clear() {
+        compressedBodyContent = null;
+        decompressedBodyContent = null;
+    }
+
+    /**
+     * <p>Extracts the message body and interprets it
+     * as the given Java type.</p>
      *
+     * <p>If a codec is registered for the message's content type and
+     * the codec is able to decode the given type, the codec is used.
+     * Otherwise, strings and primitive values are read as plain text
+     * and all other types are read as JSON.</p>
+     *
+     * @see MessageCodecRegistry
      * @param type The Java type
      * @return The message body a the specified type
      */
-    @SuppressWarnings("unchecked")
     public <T> T readBodyAs(Class<T> type) {
+        return readBodyAs(type, 0, readBodyContent().length);
+    }
+
+    /**
+     * <p>Extracts the given range of the message body and interprets
+     * it as the given Java type without copying the range first.</p>
+     *
+     * <p>Use this to read a sub-message embedded in a larger body.
+     * The codec is chosen the same way as for the whole body.</p>
+     *
+     * @see #readBodyAs(Class)
+     * @param type The Java type
+     * @param offset The offset of the range within the body
+     * @param length The length of the range
+     * @return The range of the message body as the specified type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T readBodyAs(Class<T> type, int offset, int length) {
+        MessageCodec codec = MessageCodecRegistry.getCodec(readContentType());
+        if (codec != null && codec.canDecode(type)) {
+            return readBodyWithCodec(codec, type, offset, length);
+        }
         if (String.class.isAssignableFrom(type)) {
-            return (T)readBodyAsString();
+            return (T)readBodyAsString(offset, length);
+        } else if (Long.class.equals(type)) {
+            return (T)Long.valueOf(readBodyAsLong(offset, length));
+        } else if (Integer.class.equals(type)) {
+            return (T)Integer.valueOf(readBodyAsInt(offset, length));
         } else if (Number.class.isAssignableFrom(type)) {
-            return (T)readBodyAsNumber((Class<Number>) type);
+            return (T)toNumber(validateForNumber(readBodyAsString(offset, length)), (Class<Number>) type);
         } else if (Boolean.class.isAssignableFrom(type)) {
-            return (T)readBodyAsBoolean();
+            return (T)Boolean.valueOf(readBodyAsString(offset, length));
         } else if (Character.class.isAssignableFrom(type)) {
-            return (T)readBodyAsChar();
+            return (T)Character.valueOf(readBodyAsString(offset, length).charAt(0));
         }
-        return readBodyAsObject(type);
+        return readBodyWithCodec(MessageCodecRegistry.getCodec(Message.APPLICATION_JSON), type, offset, length);
     }
 
     /**
@@ -83,10 +197,24 @@ public class MessageReader {
      */
     public String readBodyAsString() {
         Charset charset = readCharset();
-        byte[] bodyContent = message.getBodyContent();
+        byte[] bodyContent = readBodyContent();
         return new String(bodyContent, charset);
     }
 
+    /**
+     * Extracts the given range of the message body
+     * and interprets it as a string.
+     *
+     * @param offset The offset of the range within the body
+     * @param length The length of the range
+     * @return The range of the message body as string
+     */
+    public String readBodyAsString(int offset, int length) {
+        Charset charset = readCharset();
+        byte[] bodyContent = readBodyContent();
+        return new String(bodyContent, offset, length, charset);
+    }
+
     /**
      * Extracts the message body and interprets it
      * as a boolean.
@@ -118,7 +246,76 @@ public class MessageReader {
      */
     @SuppressWarnings("unchecked")
     public <T extends Number> T readBodyAsNumber(Class<T> type) {
-        String messageContent = readBodyAndValidateForNumber();
+        if (Long.class.equals(type)) {
+            return (T)Long.valueOf(readBodyAsLong());
+        } else if (Integer.class.equals(type)) {
+            return (T)Integer.valueOf(readBodyAsInt());
+        }
+        return toNumber(readBodyAndValidateForNumber(), type);
+    }
+
+    /**
+     * Extracts the message body and interprets it as long. For
+     * ASCII compatible charsets, the digits are parsed directly
+     * from the body bytes without creating a string.
+     *
+     * @return The message body as long
+     */
+    public long readBodyAsLong() {
+        return readBodyAsLong(0, readBodyContent().length);
+    }
+
+    /**
+     * Extracts the given range of the message body and interprets it as long.
+     *
+     * @see #readBodyAsLong()
+     * @param offset The offset of the range within the body
+     * @param length The length of the range
+     * @return The range of the message body as long
+     */
+    public long readBodyAsLong(int offset, int length) {
+        if (AsciiNumbers.isAsciiCompatible(readCharset())) {
+            return AsciiNumbers.parseLong(readBodyContent(), offset, length);
+        }
+        return Long.parseLong(validateForNumber(readBodyAsString(offset, length)));
+    }
+
+    /**
+     * Extracts the message body and interprets it as int. For
+     * ASCII compatible charsets, the digits are parsed directly
+     * from the body bytes without creating a string.
+     *
+     * @return The message body as int
+     */
+    public int readBodyAsInt() {
+        return readBodyAsInt(0, readBodyContent().length);
+    }
+
+    /**
+     * Extracts the given range of the message body and interprets it as int.
+     *
+     * @see #readBodyAsInt()
+     * @param offset The offset of the range within the body
+     * @param length The length of the range
+     * @return The range of the message body as int
+     */
+    public int readBodyAsInt(int offset, int length) {
+        if (AsciiNumbers.isAsciiCompatible(readCharset())) {
+            return AsciiNumbers.parseInt(readBodyContent(), offset, length);
+        }
+        return Integer.parseInt(validateForNumber(readBodyAsString(offset, length)));
+    }
+
+    /**
+     * Interprets the given validated content as the
+     * given number type.
+     *
+     * @param messageContent The content
+     * @param type The number type
+     * @return The content as the specified number
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Number> T toNumber(String messageContent, Class<T> type) {
         if (type.equals(BigDecimal.class)) {
             return (T)new BigDecimal(messageContent);
         } else if (type.equals(BigInteger.class)) {
@@ -138,7 +335,7 @@ public class MessageReader {
 
     /**
      * Extracts the message body and interprets it as
-     * the XML representation of an object of the given
+     * the JSON representation of an object of the given
      * type.
      *
      * @param type The type (class) of the object
@@ -162,11 +359,63 @@ public class MessageReader {
 //            throw new RuntimeException(e);
 //        }
 
-        ObjectMapper objectMapper = new ObjectMapper();
+        return readBodyWithCodec(MessageCodecRegistry.getCodec(Message.APPLICATION_JSON), type);
+    }
 
+    /**
+     * <p>Extracts the message body as JSON array and provides its
+     * elements as objects of the given type one after the other.</p>
+     *
+     * <p>Elements are parsed on demand while iterating, so processing
+     * starts with the first element and only the current element is
+     * held in memory. A body not being an array is iterated as a
+     * single element.</p>
+     *
+     * @param type The type (class) of the elements
+     * @return An iterator over the elements of the body
+     */
+    public <T> Iterator<T> readBodyAsIterator(Class<T> type) {
+        Charset charset = readCharset();
+        byte[] bodyContent = readBodyContent();
+        JsonFactory jsonFactory = JsonCodecRegistry.getObjectMapper().getJsonFactory();
+        try {
+            JsonParser parser;
+            if (Message.DEFAULT_MESSAGE_CHARSET.equals(charset)) {
+                parser = jsonFactory.createJsonParser(bodyContent);
+            } else {
+                parser = jsonFactory.createJsonParser(new InputStreamReader(new ByteArrayInputStream(bodyContent), charset));
+            }
+            return new JsonArrayIterator<T>(parser, JsonCodecRegistry.readerFor(type));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Extracts the message body and decodes it to the
+     * given type using the given codec.
+     *
+     * @param codec The codec to decode the body with
+     * @param type The type (class) of the object
+     * @return The message body as an object of the specified type
+     */
+    public <T> T readBodyWithCodec(MessageCodec codec, Class<T> type) {
+        return readBodyWithCodec(codec, type, 0, readBodyContent().length);
+    }
+
+    /**
+     * Extracts the given range of the message body and
+     * decodes it to the given type using the given codec.
+     *
+     * @param codec The codec to decode the range with
+     * @param type The type (class) of the object
+     * @param offset The offset of the range within the body
+     * @param length The length of the range
+     * @return The range of the message body as an object of the specified type
+     */
+    public <T> T readBodyWithCodec(MessageCodec codec, Class<T> type, int offset, int length) {
         try {
-            T object = objectMapper.readValue(message.getBodyContent(), type);
-            return object;
+            return codec.decode(readBodyContent(), offset, length, type, readCharset());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -180,12 +429,22 @@ public class MessageReader {
      * @return The message content charset
      */
     String readBodyAndValidateForNumber() {
-        String messageContent = readBodyAsString();
+        return validateForNumber(readBodyAsString());
+    }
+
+    /**
+     * Validates that the given content is a number.
+     *
+     * @param messageContent The content
+     * @return The validated content
+     */
+    static String validateForNumber(String messageContent) {
         if (messageContent == null || messageContent.isEmpty()) {
             throw new RuntimeException("Message is empty");
         }
-        // Check if content is a number
-        for (int i = 0; i < messageContent.length(); i++) {
+        // Check if content is a number, optionally negative
+        int start = messageContent.charAt(0) == '-' && messageContent.length() > 1 ? 1 : 0;
+        for (int i = start; i < messageContent.length(); i++) {
             if (! Character.isDigit(messageContent.charAt(i))) {
                 throw new RuntimeException("Message is not a number");
             }
@@ -1,7 +1,13 @@
 package com.zanox.rabbiteasy;
 
+import com.zanox.rabbiteasy.codec.MessageCodec;
+import com.zanox.rabbiteasy.codec.MessageCodecRegistry;
+import com.zanox.rabbiteasy.compression.BodyCompressor;
+import com.zanox.rabbiteasy.compression.CompressionRegistry;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerationException;
-import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.JsonGenerator;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -14,6 +20,7 @@ import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.Iterator;
 
 /**
  * @author christian.bick
@@ -43,24 +50,49 @@ public class MessageWriter {
      * using the given charset for character encoding.</p>
      *
      * <p>For primitive types and Strings, the message body is written as
-     * plain text. In all other cases, the object is serialized to XML.</p>
+     * plain text. In all other cases, the object is serialized with the
+     * default object codec (JSON unless configured otherwise).</p>
+     *
+     * @see MessageCodecRegistry#getDefaultObjectCodec()
      *
      * @param body The message body
      * @param charset The charset to use for character encoding
      * @param <T> The object type
      */
     public <T> void writeBody(T body, Charset charset) {
-        if (isPrimitive(body)) {
+        if (isIntegral(body)) {
+            writeBodyFromLong(((Number) body).longValue(), charset);
+        } else if (isPrimitive(body)) {
             String bodyAsString = String.valueOf(body);
             writeBodyFromString(bodyAsString, charset);
         } else if (isString(body)) {
             String bodyAsString = (String)body;
             writeBodyFromString(bodyAsString, charset);
         } else {
-            writeBodyFromObject(body, charset);
+            writeBodyWithCodec(body, MessageCodecRegistry.getDefaultObjectCodec(), charset);
         }
     }
 
+    /**
+     * <p>Writes the message body using the given object of type T
+     * encoded with the codec registered for the given content type.</p>
+     *
+     * @param body The message body
+     * @param contentType The content type to encode the body with
+     * @param charset The charset to use for character encoding
+     * @param <T> The object type
+     */
+    public <T> void writeBody(T body, String contentType, Charset charset) {
+        MessageCodec codec = MessageCodecRegistry.getCodec(contentType);
+        if (codec == null) {
+            throw new IllegalArgumentException("No codec registered for content type " + contentType);
+        }
+        if (! codec.canEncode(body.getClass())) {
+            throw new IllegalArgumentException("Codec for content type " + contentType + " cannot encode " + body.getClass());
+        }
+        writeBodyWithCodec(body, codec, charset);
+    }
+
     /**
      * Writes the message body from a string using the given charset
      * as encoding and setting the content type to text/plain.
@@ -72,12 +104,33 @@ public class MessageWriter {
         message.contentEncoding(charset.name())
                 .contentType(Message.TEXT_PLAIN);
         byte[] bodyContent = bodyAsString.getBytes(charset);
-        message.body(bodyContent);
+        writeBodyContent(bodyContent);
     }
 
     /**
-     * Writes the body by serializing the given object to XML.
+     * Writes the message body from a long as decimal digits and sets
+     * the content type to text/plain. For ASCII compatible charsets,
+     * the digits are formatted directly as bytes without creating a
+     * string.
      *
+     * @param bodyAsLong Body to write as long
+     * @param charset The charset to encode the digits
+     */
+    public void writeBodyFromLong(long bodyAsLong, Charset charset) {
+        if (! AsciiNumbers.isAsciiCompatible(charset)) {
+            writeBodyFromString(String.valueOf(bodyAsLong), charset);
+            return;
+        }
+        message.contentEncoding(charset.name())
+                .contentType(Message.TEXT_PLAIN);
+        writeBodyContent(AsciiNumbers.format(bodyAsLong));
+    }
+
+    /**
+     * Writes the body by serializing the given object to JSON
+     * using the shared writer of the object's type.
+     *
+     * @see com.zanox.rabbiteasy.codec.JsonCodec
      * @param bodyAsObject The body as object
      * @param <T> The object type
      */
@@ -101,16 +154,100 @@ public class MessageWriter {
 //        }
 //
 //        byte[] bodyContent = outputStream.toByteArray();
-        ObjectMapper objectMapper = new ObjectMapper();
-        String bodyContent;
+        writeBodyWithCodec(bodyAsObject, MessageCodecRegistry.getCodec(Message.APPLICATION_JSON), charset);
+    }
+
+    /**
+     * Writes the body by encoding the given object with the given
+     * codec and setting the content type to the codec's content type.
+     *
+     * @param body The body as object
+     * @param codec The codec to encode the body with
+     * @param charset The charset to use for character encoding
+     */
+    public void writeBodyWithCodec(Object body, MessageCodec codec, Charset charset) {
+        byte[] bodyContent;
         try {
-            bodyContent = objectMapper.writeValueAsString(bodyAsObject);
+            bodyContent = codec.encode(body, charset);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        message.contentType(codec.getContentType())
+                .contentEncoding(charset.name());
+        writeBodyContent(bodyContent);
+    }
+
+    /**
+     * <p>Writes the message body as JSON array containing the elements
+     * provided by the given iterator and sets the content type to
+     * application/json.</p>
+     *
+     * <p>Elements are serialized one after the other while iterating,
+     * so the iterator may produce its elements lazily.</p>
+     *
+     * @param elements The elements of the body
+     * @param charset The charset to use for character encoding
+     */
+    public void writeBodyFromIterator(Iterator<?> elements, Charset charset) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        JsonFactory jsonFactory = JsonCodecRegistry.getObjectMapper().getJsonFactory();
+        try {
+            JsonGenerator generator;
+            if (Message.DEFAULT_MESSAGE_CHARSET.equals(charset)) {
+                generator = jsonFactory.createJsonGenerator(outputStream, JsonEncoding.UTF8);
+            } else {
+                generator = jsonFactory.createJsonGenerator(new OutputStreamWriter(outputStream, charset));
+            }
+            generator.writeStartArray();
+            while (elements.hasNext()) {
+                Object element = elements.next();
+                if (element == null) {
+                    generator.writeNull();
+                } else {
+                    JsonCodecRegistry.writerFor(element.getClass()).writeValue(generator, element);
+                }
+            }
+            generator.writeEndArray();
+            generator.close();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
         message.contentType(Message.APPLICATION_JSON)
                 .contentEncoding(charset.name());
+        writeBodyContent(outputStream.toByteArray());
+    }
+
+    /**
+     * <p>Writes the given encoded body content to the message.</p>
+     *
+     * <p>If compression is enabled and the content reaches the compression
+     * threshold, the content is compressed and the compression algorithm is
+     * recorded in the message headers. Compressed content is only used if
+     * it is actually smaller than the original content.</p>
+     *
+     * @see CompressionRegistry#enableCompression(String, int)
+     * @param bodyContent The encoded body content
+     */
+    public void writeBodyContent(byte[] bodyContent) {
+        BodyCompressor compressor = CompressionRegistry.getCompressorForSize(bodyContent.length);
+        if (compressor != null) {
+            byte[] compressedBodyContent;
+            try {
+                compressedBodyContent = compressor.compress(bodyContent, 0, bodyContent.length);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            if (compressedBodyContent.length < bodyContent.length) {
+                message.header(CompressionRegistry.COMPRESSION_HEADER, compressor.getName());
+                message.body(compressedBodyContent);
+                return;
+            }
+        }
+        if (message.getHeader(CompressionRegistry.COMPRESSION_HEADER) != null) {
+            message.header(CompressionRegistry.COMPRESSION_HEADER, null);
+        }
         message.body(bodyContent);
     }
 
@@ -118,6 +255,13 @@ public class MessageWriter {
         return object instanceof String;
     }
 
+    boolean isIntegral(Object object) {
+        return object instanceof Long
+                || object instanceof Integer
+                || object instanceof Short
+                || object instanceof Byte;
+    }
+
     boolean isPrimitive(Object object) {
         return object.getClass().isPrimitive()
                 || object instanceof Boolean
@@ -1,7 +1,9 @@
 package com.zanox.rabbiteasy;
 
+import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.FlowListener;
 import com.rabbitmq.client.ShutdownListener;
 import com.rabbitmq.client.ShutdownSignalException;
 import org.slf4j.Logger;
@@ -13,6 +15,10 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>A single connection factory provides ONE SINGLE connection to a 
@@ -21,6 +27,15 @@ import java.util.concurrent.ExecutorService;
  * <p>It is recommended by the RabbitMQ documentation (v2.7) to use
  * one single connection within a client and to use one channel for
  * every client thread.</p>
+ *
+ * <p>The factory also tracks whether the broker blocked publishing
+ * by flow control on any of the channels registered for monitoring.
+ * Publishers wait for the connection to be unblocked instead of
+ * writing to a blocked connection.</p>
+ *
+ * <p>Connection operations are guarded by explicit locks instead of
+ * monitors, so threads waiting for a connection to be established do
+ * not pin the carrier threads of virtual threads.</p>
  * 
  * @author christian.bick
  *
@@ -56,17 +71,25 @@ public class SingleConnectionFactory extends ConnectionFactory {
     
     ShutdownListener connectionShutdownListener;
     List<ConnectionListener> connectionListeners;
+    List<FlowControlListener> flowControlListeners;
     volatile Connection connection;
     volatile State state = State.NEVER_CONNECTED;
     private ExecutorService executorService;
 
-    private final Object operationOnConnectionMonitor = new Object();
+    private final Lock connectionLock = new ReentrantLock();
+
+    private final Lock flowLock = new ReentrantLock();
+    private final Condition unblocked = flowLock.newCondition();
+    private int blockedChannels;
+    private long blockedSince;
+    private long blockedTime;
 
     public SingleConnectionFactory() {
         super();
         setRequestedHeartbeat(CONNECTION_HEARTBEAT_IN_SEC);
         setConnectionTimeout(CONNECTION_TIMEOUT_IN_MS);
         connectionListeners = Collections.synchronizedList(new LinkedList<ConnectionListener>());
+        flowControlListeners = Collections.synchronizedList(new LinkedList<FlowControlListener>());
         connectionShutdownListener = new ConnectionShutDownListener();
     }
     
@@ -110,7 +133,8 @@ public class SingleConnectionFactory extends ConnectionFactory {
      */
     @PreDestroy
     public void close() {
-        synchronized (operationOnConnectionMonitor) {
+        connectionLock.lock();
+        try {
             if (state == State.CLOSED) {
                 LOGGER.warn("Attempt to close connection factory which is already closed");
                 return;
@@ -130,6 +154,8 @@ public class SingleConnectionFactory extends ConnectionFactory {
             }
             changeState(State.CLOSED);
             LOGGER.info("Closed connection factory");
+        } finally {
+            connectionLock.unlock();
         }
     }
     
@@ -152,6 +178,93 @@ public class SingleConnectionFactory extends ConnectionFactory {
         connectionListeners.remove(connectionListener);
     }
 
+    /**
+     * Registers a flow control listener at the factory which is
+     * notified when the broker blocks or unblocks publishing.
+     *
+     * @param flowControlListener The flow control listener
+     */
+    public void registerFlowControlListener(FlowControlListener flowControlListener) {
+        flowControlListeners.add(flowControlListener);
+    }
+
+    /**
+     * Removes a flow control listener from the factory.
+     *
+     * @param flowControlListener The flow control listener
+     */
+    public void removeFlowControlListener(FlowControlListener flowControlListener) {
+        flowControlListeners.remove(flowControlListener);
+    }
+
+    /**
+     * Monitors flow control on the given channel. As long as the broker
+     * stopped the flow on any monitored channel, the connection is
+     * considered as blocked.
+     *
+     * @param channel The channel to monitor
+     */
+    public void monitorFlow(Channel channel) {
+        ChannelFlowListener flowListener = new ChannelFlowListener();
+        channel.addFlowListener(flowListener);
+        channel.addShutdownListener(flowListener);
+    }
+
+    /**
+     * Checks if the broker currently blocks publishing by flow control.
+     *
+     * @return True if the connection is blocked
+     */
+    public boolean isBlocked() {
+        flowLock.lock();
+        try {
+            return blockedChannels > 0;
+        } finally {
+            flowLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the broker does not block publishing any more.
+     *
+     * @param timeout The maximum time to wait in milliseconds
+     * @return True if the connection is not blocked, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitUnblocked(long timeout) throws InterruptedException {
+        flowLock.lock();
+        try {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (blockedChannels > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                unblocked.await(remaining, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        } finally {
+            flowLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the total time the connection has been blocked so far.
+     *
+     * @return The blocked time in milliseconds
+     */
+    public long getBlockedTime() {
+        flowLock.lock();
+        try {
+            if (blockedChannels > 0) {
+                return blockedTime + System.currentTimeMillis() - blockedSince;
+            }
+            return blockedTime;
+        } finally {
+            flowLock.unlock();
+        }
+    }
+
     /**
      * Sets an {@code ExecutorService} to be used for this connection.
      * If none is set a default one will be used (currently 5 threads).
@@ -213,13 +326,54 @@ public class SingleConnectionFactory extends ConnectionFactory {
         }
     }
 
+    /**
+     * Changes the flow state of one channel and notifies all flow control
+     * listeners if the connection became blocked or unblocked.
+     *
+     * @param channelBlocked True if the flow of a channel was stopped
+     */
+    void changeFlow(boolean channelBlocked) {
+        flowLock.lock();
+        try {
+            if (channelBlocked) {
+                blockedChannels++;
+                if (blockedChannels > 1) {
+                    return;
+                }
+                blockedSince = System.currentTimeMillis();
+            } else {
+                blockedChannels--;
+                if (blockedChannels > 0) {
+                    return;
+                }
+                blockedTime += System.currentTimeMillis() - blockedSince;
+                unblocked.signalAll();
+            }
+        } finally {
+            flowLock.unlock();
+        }
+        if (channelBlocked) {
+            LOGGER.warn("Connection to {}:{} blocked by broker", getHost(), getPort());
+        } else {
+            LOGGER.info("Connection to {}:{} unblocked by broker", getHost(), getPort());
+        }
+        for (FlowControlListener listener : flowControlListeners) {
+            if (channelBlocked) {
+                listener.onConnectionBlocked(connection);
+            } else {
+                listener.onConnectionUnblocked(connection);
+            }
+        }
+    }
+
     /**
      * Establishes a new connection.
      *
      * @throws IOException if establishing a new connection fails
      */
     void establishConnection () throws IOException {
-        synchronized (operationOnConnectionMonitor) {
+        connectionLock.lock();
+        try {
             if (state == State.CLOSED) {
                 throw new IOException("Attempt to establish a connection with a closed connection factory");
             } else if (state == State.CONNECTED) {
@@ -235,6 +389,8 @@ public class SingleConnectionFactory extends ConnectionFactory {
                 LOGGER.error("Failed to establish connection to {}:{}", getHost(), getPort());
                 throw e;
             }
+        } finally {
+            connectionLock.unlock();
         }
     }
     
@@ -254,13 +410,16 @@ public class SingleConnectionFactory extends ConnectionFactory {
                 return;
             }
 
-            synchronized (operationOnConnectionMonitor) {
+            connectionLock.lock();
+            try {
                 // No action to be taken if factory is already closed
                 // or already connecting
                 if (state == State.CLOSED || state == State.CONNECTING) {
                     return;
                 }
                 changeState(State.CONNECTING);
+            } finally {
+                connectionLock.unlock();
             }
             LOGGER.error("Connection to {}:{} lost", getHost(), getPort());
             while (state == State.CONNECTING) {
@@ -279,4 +438,30 @@ public class SingleConnectionFactory extends ConnectionFactory {
             }
         }
     }
+
+    /**
+     * A listener registered on monitored channels to be
+     * notified about flow control by the broker.
+     */
+    private class ChannelFlowListener implements FlowListener, ShutdownListener {
+
+        private boolean active = true;
+
+        @Override
+        public void handleFlow(boolean active) {
+            synchronized (this) {
+                if (this.active == active) {
+                    return;
+                }
+                this.active = active;
+            }
+            changeFlow(! active);
+        }
+
+        @Override
+        public void shutdownCompleted(ShutdownSignalException cause) {
+            // A closed channel does not block the connection any more
+            handleFlow(true);
+        }
+    }
 }
@@ -0,0 +1,67 @@
+package com.zanox.rabbiteasy.codec;
+
+import com.zanox.rabbiteasy.JsonCodecRegistry;
+import com.zanox.rabbiteasy.Message;
+import org.codehaus.jackson.map.ObjectWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes and decodes objects as JSON using the shared readers
+ * and writers of the {@link JsonCodecRegistry}.
+ */
+public class JsonCodec implements MessageCodec {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getContentType() {
+        return Message.APPLICATION_JSON;
+    }
+
+    /**
+     * Strings and primitive values are written as plain text
+     * and thus not handled by this codec.
+     */
+    @Override
+    public boolean canEncode(Class<?> type) {
+        return ! MessageCodecRegistry.isPlainTextType(type);
+    }
+
+    /**
+     * Strings and primitive values are read as plain text
+     * and thus not handled by this codec.
+     */
+    @Override
+    public boolean canDecode(Class<?> type) {
+        return ! MessageCodecRegistry.isPlainTextType(type);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] encode(Object body, Charset charset) throws IOException {
+        ObjectWriter objectWriter = JsonCodecRegistry.writerFor(body.getClass());
+        if (Message.DEFAULT_MESSAGE_CHARSET.equals(charset)) {
+            return objectWriter.writeValueAsBytes(body);
+        }
+        return objectWriter.writeValueAsString(body).getBytes(charset);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T decode(byte[] body, int offset, int length, Class<T> type, Charset charset) throws IOException {
+        if (Message.DEFAULT_MESSAGE_CHARSET.equals(charset)) {
+            return JsonCodecRegistry.readerFor(type).<T>readValue(body, offset, length);
+        }
+        return JsonCodecRegistry.readerFor(type).<T>readValue(
+                new InputStreamReader(new ByteArrayInputStream(body, offset, length), charset));
+    }
+}
@@ -0,0 +1,71 @@
+package com.zanox.rabbiteasy.codec;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * <p>A message codec encodes Java objects to message bodies and decodes
+ * message bodies to Java objects for exactly one content type.</p>
+ *
+ * <p>Codecs are registered at the {@link MessageCodecRegistry} either
+ * programmatically or by listing the implementing class in a
+ * <code>META-INF/services/com.zanox.rabbiteasy.codec.MessageCodec</code>
+ * file on the class path. This way, compact binary formats (e.g. Smile
+ * or CBOR) can be plugged in without changing the library.</p>
+ *
+ * <p>Implementations must be thread safe as one codec instance is shared
+ * by all messages of a process.</p>
+ */
+public interface MessageCodec {
+
+    /**
+     * Gets the content type handled by this codec (e.g. application/json).
+     * The content type is written to the message properties when encoding
+     * and used to look up the codec when decoding.
+     *
+     * @return The content type
+     */
+    String getContentType();
+
+    /**
+     * Checks if the codec is able to encode objects of the given type.
+     *
+     * @param type The type of the object to encode
+     * @return True if the codec can encode the type
+     */
+    boolean canEncode(Class<?> type);
+
+    /**
+     * Checks if the codec is able to decode message bodies to the given type.
+     *
+     * @param type The type to decode to
+     * @return True if the codec can decode to the type
+     */
+    boolean canDecode(Class<?> type);
+
+    /**
+     * Encodes the given object to a message body.
+     *
+     * @param body The object to encode
+     * @param charset The charset to use if the content type is text based
+     * @return The encoded message body
+     * @throws IOException if the object cannot be encoded
+     */
+    byte[] encode(Object body, Charset charset) throws IOException;
+
+    /**
+     * Decodes the given range of a message body to an object of the given
+     * type. Implementations should read the range in place instead of
+     * copying it as bodies may be large and ranges may be sub-messages.
+     *
+     * @param body The message body
+     * @param offset The offset of the range to decode
+     * @param length The length of the range to decode
+     * @param type The type to decode to
+     * @param charset The charset of the body if the content type is text based
+     * @return The decoded object
+     * @throws IOException if the body cannot be decoded
+     */
+    <T> T decode(byte[] body, int offset, int length, Class<T> type, Charset charset) throws IOException;
+
+}
@@ -0,0 +1,130 @@
+package com.zanox.rabbiteasy.codec;
+
+import com.zanox.rabbiteasy.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Process wide registry of message codecs keyed by their content type.</p>
+ *
+ * <p>The JSON codec is registered by default. Further codecs are
+ * discovered via {@link ServiceLoader} when the registry is loaded
+ * and may replace the default codec for their content type. Codecs can
+ * also be registered programmatically at any time.</p>
+ *
+ * <p>When writing objects without an explicit content type, the codec of
+ * the default object content type is used (application/json unless
+ * changed). Strings and primitive values are always written as plain text.</p>
+ */
+public final class MessageCodecRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageCodecRegistry.class);
+
+    private static final ConcurrentMap<String, MessageCodec> CODECS = new ConcurrentHashMap<String, MessageCodec>();
+
+    private static volatile String defaultObjectContentType = Message.APPLICATION_JSON;
+
+    static {
+        register(new JsonCodec());
+        loadServiceCodecs();
+    }
+
+    private MessageCodecRegistry() {
+    }
+
+    /**
+     * Registers a codec for its content type. An already registered
+     * codec for the same content type is replaced.
+     *
+     * @param codec The codec
+     */
+    public static void register(MessageCodec codec) {
+        CODECS.put(normalize(codec.getContentType()), codec);
+        LOGGER.debug("Registered codec {} for content type {}", codec.getClass().getName(), codec.getContentType());
+    }
+
+    /**
+     * Gets the codec registered for the given content type. Content type
+     * parameters (e.g. "; charset=UTF-8") are ignored.
+     *
+     * @param contentType The content type
+     * @return The codec or null if no codec is registered for the content type
+     */
+    public static MessageCodec getCodec(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        return CODECS.get(normalize(contentType));
+    }
+
+    /**
+     * Gets the codec used to write objects for which no content type
+     * was specified explicitly.
+     *
+     * @return The default object codec
+     */
+    public static MessageCodec getDefaultObjectCodec() {
+        MessageCodec codec = getCodec(defaultObjectContentType);
+        if (codec == null) {
+            throw new IllegalStateException("No codec registered for default content type " + defaultObjectContentType);
+        }
+        return codec;
+    }
+
+    /**
+     * Sets the content type used to write objects for which no content
+     * type was specified explicitly. A codec must be registered for it.
+     *
+     * @param contentType The default object content type
+     */
+    public static void setDefaultObjectContentType(String contentType) {
+        if (getCodec(contentType) == null) {
+            throw new IllegalArgumentException("No codec registered for content type " + contentType);
+        }
+        defaultObjectContentType = contentType;
+    }
+
+    /**
+     * Checks if values of the given type are transported as plain
+     * text by default (strings, characters, booleans and numbers).
+     *
+     * @param type The type
+     * @return True if the type is a plain text type
+     */
+    public static boolean isPlainTextType(Class<?> type) {
+        return type.isPrimitive()
+                || String.class.isAssignableFrom(type)
+                || Number.class.isAssignableFrom(type)
+                || Boolean.class.isAssignableFrom(type)
+                || Character.class.isAssignableFrom(type);
+    }
+
+    static String normalize(String contentType) {
+        int parameterIndex = contentType.indexOf(';');
+        if (parameterIndex >= 0) {
+            contentType = contentType.substring(0, parameterIndex);
+        }
+        return contentType.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    static void loadServiceCodecs() {
+        Iterator<MessageCodec> codecs = ServiceLoader.load(MessageCodec.class).iterator();
+        while (true) {
+            try {
+                if (! codecs.hasNext()) {
+                    return;
+                }
+                register(codecs.next());
+            } catch (ServiceConfigurationError e) {
+                LOGGER.error("Failed to load message codec", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.zanox.rabbiteasy.compression;
+
+import java.io.IOException;
+
+/**
+ * <p>Compresses and decompresses message bodies with a certain
+ * algorithm identified by its name.</p>
+ *
+ * <p>Implementations must be thread safe as one instance is shared by
+ * all messages. Implementations may be registered in the
+ * {@link CompressionRegistry} programmatically or via a
+ * <code>META-INF/services/com.zanox.rabbiteasy.compression.BodyCompressor</code>
+ * file.</p>
+ */
+public interface BodyCompressor {
+
+    /**
+     * Gets the name of the compression algorithm which is
+     * recorded in the message headers of compressed messages.
+     *
+     * @return The name of the algorithm
+     */
+    String getName();
+
+    /**
+     * Compresses the given range of a message body.
+     *
+     * @param body The uncompressed body
+     * @param offset The offset of the range to compress
+     * @param length The length of the range to compress
+     * @return The compressed body
+     * @throws IOException if the body cannot be compressed
+     */
+    byte[] compress(byte[] body, int offset, int length) throws IOException;
+
+    /**
+     * Decompresses the given range of a message body.
+     *
+     * @param body The compressed body
+     * @param offset The offset of the range to decompress
+     * @param length The length of the range to decompress
+     * @return The decompressed body
+     * @throws IOException if the body cannot be decompressed
+     */
+    byte[] decompress(byte[] body, int offset, int length) throws IOException;
+
+}
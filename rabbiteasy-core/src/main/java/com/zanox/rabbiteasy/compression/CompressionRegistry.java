@@ -0,0 +1,140 @@
+package com.zanox.rabbiteasy.compression;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Process wide registry of body compressors keyed by their name.</p>
+ *
+ * <p>Compression is disabled by default. Once enabled, message bodies
+ * written by a {@link com.zanox.rabbiteasy.MessageWriter} which reach the
+ * configured threshold are compressed with the configured compressor.
+ * The compressor's name is recorded in the {@link #COMPRESSION_HEADER}
+ * message header as the content encoding property already holds the
+ * body's charset. Compressed bodies are decompressed transparently when
+ * being read, independent of the compression being enabled.</p>
+ *
+ * <p>The deflate and gzip compressors are registered by default. Further
+ * compressors are discovered via {@link ServiceLoader} when the registry
+ * is loaded and can also be registered programmatically at any time.</p>
+ */
+public final class CompressionRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompressionRegistry.class);
+
+    public static final String COMPRESSION_HEADER = "x-compression";
+
+    private static final ConcurrentMap<String, BodyCompressor> COMPRESSORS =
+            new ConcurrentHashMap<String, BodyCompressor>();
+
+    private static volatile Compression compression;
+
+    static {
+        register(new DeflateCompressor());
+        register(new GzipCompressor());
+        loadServiceCompressors();
+    }
+
+    private CompressionRegistry() {
+    }
+
+    /**
+     * Registers a compressor for its name. An already registered
+     * compressor with the same name is replaced.
+     *
+     * @param compressor The compressor
+     */
+    public static void register(BodyCompressor compressor) {
+        COMPRESSORS.put(normalize(compressor.getName()), compressor);
+        LOGGER.debug("Registered compressor {} for {}", compressor.getClass().getName(), compressor.getName());
+    }
+
+    /**
+     * Gets the compressor registered with the given name.
+     *
+     * @param name The name of the compression algorithm
+     * @return The compressor or null if no compressor is registered with the name
+     */
+    public static BodyCompressor getCompressor(String name) {
+        if (name == null) {
+            return null;
+        }
+        return COMPRESSORS.get(normalize(name));
+    }
+
+    /**
+     * Enables compression of written bodies with the given compressor
+     * for all bodies of at least the given size.
+     *
+     * @param name The name of a registered compressor
+     * @param threshold The minimal body size in bytes to compress
+     */
+    public static void enableCompression(String name, int threshold) {
+        BodyCompressor compressor = getCompressor(name);
+        if (compressor == null) {
+            throw new IllegalArgumentException("No compressor registered for " + name);
+        }
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Compression threshold must not be negative");
+        }
+        compression = new Compression(compressor, threshold);
+    }
+
+    /**
+     * Disables compression of written bodies. Compressed
+     * bodies are still decompressed when being read.
+     */
+    public static void disableCompression() {
+        compression = null;
+    }
+
+    /**
+     * Gets the compressor to use for a body of the given size.
+     *
+     * @param bodySize The body size in bytes
+     * @return The compressor or null if the body is not to be compressed
+     */
+    public static BodyCompressor getCompressorForSize(int bodySize) {
+        Compression currentCompression = compression;
+        if (currentCompression == null || bodySize < currentCompression.threshold) {
+            return null;
+        }
+        return currentCompression.compressor;
+    }
+
+    static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    static void loadServiceCompressors() {
+        Iterator<BodyCompressor> compressors = ServiceLoader.load(BodyCompressor.class).iterator();
+        while (true) {
+            try {
+                if (! compressors.hasNext()) {
+                    return;
+                }
+                register(compressors.next());
+            } catch (ServiceConfigurationError e) {
+                LOGGER.error("Failed to load body compressor", e);
+            }
+        }
+    }
+
+    private static class Compression {
+
+        private final BodyCompressor compressor;
+        private final int threshold;
+
+        private Compression(BodyCompressor compressor, int threshold) {
+            this.compressor = compressor;
+            this.threshold = threshold;
+        }
+    }
+}
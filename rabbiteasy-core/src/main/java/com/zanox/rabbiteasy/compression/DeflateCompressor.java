@@ -0,0 +1,55 @@
+package com.zanox.rabbiteasy.compression;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>Compresses message bodies in the zlib format (RFC 1950).</p>
+ *
+ * <p>Deflaters and inflaters are pooled and reused instead of
+ * allocating the native zlib buffers per message.</p>
+ */
+public class DeflateCompressor implements BodyCompressor {
+
+    public static final String NAME = "deflate";
+
+    private final ZipSupport.ZipPool<Deflater> deflaters;
+    private final ZipSupport.ZipPool<Inflater> inflaters = ZipSupport.inflaters(false);
+
+    public DeflateCompressor() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level The compression level (0-9)
+     */
+    public DeflateCompressor(int level) {
+        deflaters = ZipSupport.deflaters(level, false);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] compress(byte[] body, int offset, int length) {
+        Deflater deflater = deflaters.borrow();
+        try {
+            return ZipSupport.deflate(deflater, body, offset, length, 0, 0);
+        } finally {
+            deflaters.giveBack(deflater);
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] body, int offset, int length) throws IOException {
+        Inflater inflater = inflaters.borrow();
+        try {
+            return ZipSupport.inflate(inflater, body, offset, length);
+        } finally {
+            inflaters.giveBack(inflater);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.zanox.rabbiteasy.compression;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>Compresses message bodies in the gzip format (RFC 1952).</p>
+ *
+ * <p>Header and trailer are written directly around the raw deflate
+ * data, so pooled deflaters and inflaters can be reused as opposed
+ * to the gzip streams of the JDK which allocate new ones.</p>
+ */
+public class GzipCompressor implements BodyCompressor {
+
+    public static final String NAME = "gzip";
+
+    private static final int HEADER_LENGTH = 10;
+    private static final int TRAILER_LENGTH = 8;
+
+    private static final int FLAG_HEADER_CRC = 2;
+    private static final int FLAG_EXTRA = 4;
+    private static final int FLAG_NAME = 8;
+    private static final int FLAG_COMMENT = 16;
+
+    private final ZipSupport.ZipPool<Deflater> deflaters;
+    private final ZipSupport.ZipPool<Inflater> inflaters = ZipSupport.inflaters(true);
+
+    public GzipCompressor() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param level The compression level (0-9)
+     */
+    public GzipCompressor(int level) {
+        deflaters = ZipSupport.deflaters(level, true);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] compress(byte[] body, int offset, int length) {
+        byte[] output;
+        Deflater deflater = deflaters.borrow();
+        try {
+            output = ZipSupport.deflate(deflater, body, offset, length, HEADER_LENGTH, TRAILER_LENGTH);
+        } finally {
+            deflaters.giveBack(deflater);
+        }
+        // Magic number, deflate method, no flags, no time, no extra flags, unknown OS
+        output[0] = (byte) 0x1f;
+        output[1] = (byte) 0x8b;
+        output[2] = 8;
+        output[9] = (byte) 0xff;
+        int trailerOffset = output.length - TRAILER_LENGTH;
+        writeInt(output, trailerOffset, checksum(body, offset, length));
+        writeInt(output, trailerOffset + 4, length);
+        return output;
+    }
+
+    @Override
+    public byte[] decompress(byte[] body, int offset, int length) throws IOException {
+        int end = offset + length;
+        if (length < HEADER_LENGTH + TRAILER_LENGTH
+                || (body[offset] & 0xff) != 0x1f || (body[offset + 1] & 0xff) != 0x8b || body[offset + 2] != 8) {
+            throw new IOException("Body is not in gzip format");
+        }
+        int flags = body[offset + 3] & 0xff;
+        int position = offset + HEADER_LENGTH;
+        if ((flags & FLAG_EXTRA) != 0) {
+            position += 2 + ((body[position] & 0xff) | (body[position + 1] & 0xff) << 8);
+        }
+        if ((flags & FLAG_NAME) != 0) {
+            position = skipZeroTerminated(body, position, end);
+        }
+        if ((flags & FLAG_COMMENT) != 0) {
+            position = skipZeroTerminated(body, position, end);
+        }
+        if ((flags & FLAG_HEADER_CRC) != 0) {
+            position += 2;
+        }
+        if (position >= end) {
+            throw new IOException("Gzip header is truncated");
+        }
+
+        byte[] output;
+        int trailerOffset;
+        Inflater inflater = inflaters.borrow();
+        try {
+            output = ZipSupport.inflate(inflater, body, position, end - position);
+            trailerOffset = end - inflater.getRemaining();
+        } finally {
+            inflaters.giveBack(inflater);
+        }
+        if (end - trailerOffset < TRAILER_LENGTH
+                || readInt(body, trailerOffset) != checksum(output, 0, output.length)
+                || readInt(body, trailerOffset + 4) != output.length) {
+            throw new IOException("Gzip trailer does not match the decompressed body");
+        }
+        return output;
+    }
+
+    private static int checksum(byte[] data, int offset, int length) {
+        CRC32 checksum = new CRC32();
+        checksum.update(data, offset, length);
+        return (int) checksum.getValue();
+    }
+
+    private static int skipZeroTerminated(byte[] data, int position, int end) {
+        while (position < end && data[position] != 0) {
+            position++;
+        }
+        return position + 1;
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >>> 8);
+        data[offset + 2] = (byte) (value >>> 16);
+        data[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xff)
+                | (data[offset + 1] & 0xff) << 8
+                | (data[offset + 2] & 0xff) << 16
+                | (data[offset + 3] & 0xff) << 24;
+    }
+}
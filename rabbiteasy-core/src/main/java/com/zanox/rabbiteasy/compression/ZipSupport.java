@@ -0,0 +1,125 @@
+package com.zanox.rabbiteasy.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Runs reusable deflaters and inflaters over byte arrays.
+ */
+final class ZipSupport {
+
+    private static final int MIN_BUFFER_SIZE = 64;
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    private ZipSupport() {
+    }
+
+    static ZipPool<Deflater> deflaters(final int level, final boolean nowrap) {
+        return new ZipPool<Deflater>() {
+            @Override
+            protected Deflater create() {
+                return new Deflater(level, nowrap);
+            }
+
+            @Override
+            protected void end(Deflater deflater) {
+                deflater.end();
+            }
+        };
+    }
+
+    static ZipPool<Inflater> inflaters(final boolean nowrap) {
+        return new ZipPool<Inflater>() {
+            @Override
+            protected Inflater create() {
+                return new Inflater(nowrap);
+            }
+
+            @Override
+            protected void end(Inflater inflater) {
+                inflater.end();
+            }
+        };
+    }
+
+    /**
+     * <p>A small bounded pool of deflaters or inflaters, so their native
+     * zlib state is reused across threads instead of being allocated per
+     * thread and only freed on finalization.</p>
+     *
+     * <p>If all pooled instances are in use, a new instance is created.
+     * Instances which do not fit into the pool any more are ended.</p>
+     */
+    abstract static class ZipPool<T> {
+
+        private final BlockingQueue<T> idle = new ArrayBlockingQueue<T>(POOL_SIZE);
+
+        T borrow() {
+            T instance = idle.poll();
+            return instance != null ? instance : create();
+        }
+
+        void giveBack(T instance) {
+            if (! idle.offer(instance)) {
+                end(instance);
+            }
+        }
+
+        protected abstract T create();
+
+        protected abstract void end(T instance);
+    }
+
+    /**
+     * Deflates the given range into a new array. The first bytes of
+     * the array are reserved for a header, the last bytes for a trailer.
+     * The returned array is trimmed to header, data and trailer.
+     */
+    static byte[] deflate(Deflater deflater, byte[] input, int offset, int length,
+                          int headerLength, int trailerLength) {
+        deflater.reset();
+        deflater.setInput(input, offset, length);
+        deflater.finish();
+        byte[] output = new byte[headerLength + length / 2 + MIN_BUFFER_SIZE];
+        int outputLength = headerLength;
+        while (! deflater.finished()) {
+            if (outputLength == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            outputLength += deflater.deflate(output, outputLength, output.length - outputLength);
+        }
+        return Arrays.copyOf(output, outputLength + trailerLength);
+    }
+
+    /**
+     * Inflates the given range into a new array. After returning, the
+     * inflater's remaining bytes denote the input following the
+     * compressed data.
+     */
+    static byte[] inflate(Inflater inflater, byte[] input, int offset, int length) throws IOException {
+        inflater.reset();
+        inflater.setInput(input, offset, length);
+        byte[] output = new byte[Math.max(length * 4, MIN_BUFFER_SIZE)];
+        int outputLength = 0;
+        try {
+            while (! inflater.finished()) {
+                if (outputLength == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                int inflated = inflater.inflate(output, outputLength, output.length - outputLength);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Compressed body is truncated");
+                }
+                outputLength += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed body is corrupt: " + e.getMessage());
+        }
+        return Arrays.copyOf(output, outputLength);
+    }
+}
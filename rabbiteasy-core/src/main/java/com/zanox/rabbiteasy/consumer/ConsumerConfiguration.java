@@ -1,5 +1,9 @@
 package com.zanox.rabbiteasy.consumer;
 
+import com.zanox.rabbiteasy.LogPolicy;
+
+import java.util.concurrent.Executor;
+
 /**
  * A consumer configuration holds parameters to be set before enabling a consumer to
  * consume messages from the message broker.
@@ -16,6 +20,10 @@ public class ConsumerConfiguration {
 	private String queueName;
 	private boolean autoAck = false;
     private int prefetchMessageCount = UNLIMITED_PREFETCH_MESSAGE_COUNT;
+    private int messagePoolSize = 0;
+    private boolean messagePoolDebug = false;
+    private LogPolicy logPolicy = LogPolicy.FULL;
+    private Executor deliveryExecutor;
 
 	public ConsumerConfiguration(String queueName) {
 		this.queueName = queueName;
@@ -48,4 +56,78 @@ public class ConsumerConfiguration {
     public int getPrefetchMessageCount() {
         return prefetchMessageCount;
     }
+
+    public int getMessagePoolSize() {
+        return messagePoolSize;
+    }
+
+    /**
+     * <p>Enables recycling of delivered messages for consumers extending
+     * {@link MessageConsumer}. Up to the given number of released messages
+     * are kept per channel for reuse. Messages are released after being
+     * acknowledged, or earlier by calling
+     * {@link com.zanox.rabbiteasy.Message#release()}.</p>
+     *
+     * <p>Important: Handlers must not use a message after handling it
+     * has finished as the message will be reused for another delivery.</p>
+     *
+     * @see com.zanox.rabbiteasy.MessagePool
+     * @param messagePoolSize The pool size per channel or 0 to disable pooling
+     */
+    public void setMessagePoolSize(int messagePoolSize) {
+        this.messagePoolSize = messagePoolSize;
+    }
+
+    public boolean isMessagePoolDebug() {
+        return messagePoolDebug;
+    }
+
+    /**
+     * Enables the detection of pooled messages being used after release.
+     * Released messages are not reused in this mode.
+     *
+     * @param messagePoolDebug True to detect usage of released messages
+     */
+    public void setMessagePoolDebug(boolean messagePoolDebug) {
+        this.messagePoolDebug = messagePoolDebug;
+    }
+
+    public LogPolicy getLogPolicy() {
+        return logPolicy;
+    }
+
+    /**
+     * Sets the policy deciding if deliveries are logged for consumers
+     * extending {@link MessageConsumer}.
+     *
+     * @param logPolicy The log policy
+     */
+    public void setLogPolicy(LogPolicy logPolicy) {
+        if (logPolicy == null) {
+            throw new IllegalArgumentException("Log policy must not be null");
+        }
+        this.logPolicy = logPolicy;
+    }
+
+    public Executor getDeliveryExecutor() {
+        return deliveryExecutor;
+    }
+
+    /**
+     * <p>Sets the executor handling the deliveries of consumers extending
+     * {@link MessageConsumer}. Every delivery is handed over to the executor,
+     * so several messages are handled concurrently and acknowledged in the
+     * order their handling finishes. On Java 21, an executor starting a
+     * virtual thread per task lets blocking handlers scale to many messages
+     * in flight.</p>
+     *
+     * <p>Important: The handler must be thread safe. The prefetch message
+     * count limits the amount of messages handled at the same time and
+     * should be set if the executor does not limit it.</p>
+     *
+     * @param deliveryExecutor The executor or null to handle deliveries on the connection's thread
+     */
+    public void setDeliveryExecutor(Executor deliveryExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+    }
 }
@@ -6,6 +6,7 @@ import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.Consumer;
 import com.rabbitmq.client.ShutdownListener;
 import com.zanox.rabbiteasy.ConnectionListener;
+import com.zanox.rabbiteasy.MessagePool;
 import com.zanox.rabbiteasy.SingleConnectionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +15,8 @@ import java.io.IOException;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A consumer container hosts consumers and manages their
@@ -32,7 +35,8 @@ public class ConsumerContainer {
     ConnectionFactory connectionFactory;
     List<ConsumerHolder> consumerHolders = Collections.synchronizedList(new LinkedList<ConsumerHolder>());
     
-    private final Object activationMonitor = new Object();
+    private final Lock containerLock = new ReentrantLock();
+    private final Lock activationLock = new ReentrantLock();
     
     /**
      * Creates the container using the given connection factory (re-)establish 
@@ -152,9 +156,14 @@ public class ConsumerContainer {
      * @param configuration The consumer configuration
      * @param instances the amount of consumer instances
      */
-    public synchronized void addConsumer(Consumer consumer, ConsumerConfiguration configuration, int instances) {
-        for (int i=0; i < instances; i++) {
-            this.consumerHolders.add(new ConsumerHolder(consumer, configuration));
+    public void addConsumer(Consumer consumer, ConsumerConfiguration configuration, int instances) {
+        containerLock.lock();
+        try {
+            for (int i=0; i < instances; i++) {
+                this.consumerHolders.add(new ConsumerHolder(consumer, configuration));
+            }
+        } finally {
+            containerLock.unlock();
         }
     }
 
@@ -167,9 +176,14 @@ public class ConsumerContainer {
      * @param consumerClass The consumer class or interface
      * @throws IOException if a consumer registration at the message broker fails
      */
-    public synchronized void startConsumers(Class<? extends Consumer> consumerClass) throws IOException {
-        List<ConsumerHolder> consumerHolderSubList = filterConsumersForClass(consumerClass);
-        enableConsumers(consumerHolderSubList);
+    public void startConsumers(Class<? extends Consumer> consumerClass) throws IOException {
+        containerLock.lock();
+        try {
+            List<ConsumerHolder> consumerHolderSubList = filterConsumersForClass(consumerClass);
+            enableConsumers(consumerHolderSubList);
+        } finally {
+            containerLock.unlock();
+        }
     }
 
     /**
@@ -181,8 +195,13 @@ public class ConsumerContainer {
      *
      * @throws IOException
      */
-    public synchronized void startAllConsumers() throws IOException {
-        enableConsumers(consumerHolders);
+    public void startAllConsumers() throws IOException {
+        containerLock.lock();
+        try {
+            enableConsumers(consumerHolders);
+        } finally {
+            containerLock.unlock();
+        }
     }
 
     /**
@@ -193,9 +212,14 @@ public class ConsumerContainer {
      *
      * @param consumerClass The consumer class or interface
      */
-    public synchronized void stopConsumers(Class<? extends Consumer> consumerClass) {
-        List<ConsumerHolder> consumerHolderSubList = filterConsumersForClass(consumerClass);
-        disableConsumers(consumerHolderSubList);
+    public void stopConsumers(Class<? extends Consumer> consumerClass) {
+        containerLock.lock();
+        try {
+            List<ConsumerHolder> consumerHolderSubList = filterConsumersForClass(consumerClass);
+            disableConsumers(consumerHolderSubList);
+        } finally {
+            containerLock.unlock();
+        }
     }
 
     /**
@@ -204,17 +228,27 @@ public class ConsumerContainer {
      * <p>A stopped consumer does not consume from the broker</p>
      *
      */
-    public synchronized void stopAllConsumers() {
-        disableConsumers(consumerHolders);
+    public void stopAllConsumers() {
+        containerLock.lock();
+        try {
+            disableConsumers(consumerHolders);
+        } finally {
+            containerLock.unlock();
+        }
     }
 
     /**
      * Resets the container, stopping all consumers and removing them from
      * the container.
      */
-    public synchronized void reset() {
-        disableConsumers(consumerHolders);
-        consumerHolders.clear();
+    public void reset() {
+        containerLock.lock();
+        try {
+            disableConsumers(consumerHolders);
+            consumerHolders.clear();
+        } finally {
+            containerLock.unlock();
+        }
     }
     
     /**
@@ -366,7 +400,8 @@ public class ConsumerContainer {
      * @throws IOException if the activation process fails for a consumer
      */
     protected void activateConsumers(List<ConsumerHolder> consumerHolders) throws IOException {
-        synchronized (activationMonitor) {
+        activationLock.lock();
+        try {
             for (ConsumerHolder consumerHolder : consumerHolders) {
                 try {
                     consumerHolder.activate();
@@ -376,6 +411,8 @@ public class ConsumerContainer {
                     throw e;
                 }
             }
+        } finally {
+            activationLock.unlock();
         }
     }
     
@@ -385,10 +422,13 @@ public class ConsumerContainer {
      * @param consumerHolders The list of consumers to deactivate.
      */
     protected void deactivateConsumers(List<ConsumerHolder> consumerHolders) {
-        synchronized (activationMonitor) {
+        activationLock.lock();
+        try {
             for (ConsumerHolder consumerHolder : consumerHolders) {
                 consumerHolder.deactivate();
             }
+        } finally {
+            activationLock.unlock();
         }
     }
     
@@ -549,6 +589,10 @@ public class ConsumerContainer {
                 channel = createChannel();
                 if (consumer instanceof ManagedConsumer) {
                     ((ManagedConsumer) consumer).setChannel(channel);
+                    if (configuration.getMessagePoolSize() > 0) {
+                        ((ManagedConsumer) consumer).setMessagePool(new MessagePool(
+                                configuration.getMessagePoolSize(), configuration.isMessagePoolDebug()));
+                    }
                 }
                 channel.basicConsume(configuration.getQueueName(), configuration.isAutoAck(), consumer);
                 channel.basicQos(configuration.getPrefetchMessageCount());
@@ -565,6 +609,7 @@ public class ConsumerContainer {
 
         private Channel channel;
         private ConsumerConfiguration configuration;
+        private MessagePool messagePool;
 
         void setChannel(Channel channel) {
             this.channel = channel;
@@ -581,6 +626,14 @@ public class ConsumerContainer {
         protected ConsumerConfiguration getConfiguration() {
             return configuration;
         }
+
+        void setMessagePool(MessagePool messagePool) {
+            this.messagePool = messagePool;
+        }
+
+        protected MessagePool getMessagePool() {
+            return messagePool;
+        }
     }
 
 }
@@ -4,10 +4,13 @@ import com.rabbitmq.client.AMQP.BasicProperties;
 import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.ShutdownSignalException;
 import com.zanox.rabbiteasy.Message;
+import com.zanox.rabbiteasy.MessagePool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * A simple implementation of a message consumer which implements
@@ -63,18 +66,53 @@ public abstract class MessageConsumer extends ConsumerContainer.ManagedConsumer
      * message parts to a {@link com.zanox.rabbiteasy.Message} which provides convenient access to
      * the message parts and hands it over to the {@link #handleMessage(com.zanox.rabbiteasy.Message)}
      * method.</p>
+     *
+     * <p>If a delivery executor is configured, the message is handled by the
+     * executor and this method returns immediately. If the executor rejects
+     * the message, it is handled directly.</p>
      * 
      */
-    public void handleDelivery(String consumerTag, Envelope envelope, BasicProperties properties, byte[] body)
-        throws IOException {
+    public void handleDelivery(final String consumerTag, final Envelope envelope, BasicProperties properties,
+                               byte[] body) throws IOException {
         LOGGER.debug("Consumer {}: Received handle delivery", consumerTag);
-        Message message = new Message(properties)
-                .exchange(envelope.getExchange())
-                .routingKey(envelope.getRoutingKey())
-                .deliveryTag(envelope.getDeliveryTag())
-                .body(body);
+        MessagePool messagePool = getMessagePool();
+        final Message message = messagePool == null
+                ? new Message(envelope, properties, body)
+                : messagePool.acquire(envelope, properties, body);
+        Executor deliveryExecutor = getConfiguration().getDeliveryExecutor();
+        if (deliveryExecutor == null) {
+            handleDelivery(consumerTag, envelope, message);
+            return;
+        }
         try {
-            LOGGER.info("Consumer {}: Received message {}", consumerTag, envelope.getDeliveryTag());
+            deliveryExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        handleDelivery(consumerTag, envelope, message);
+                    } catch (IOException e) {
+                        LOGGER.error("Consumer {}: Failed to acknowledge message {}",
+                            new Object[] { consumerTag, envelope.getDeliveryTag(), e });
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Consumer {}: Delivery executor rejected message {}, handling it directly",
+                consumerTag, envelope.getDeliveryTag());
+            handleDelivery(consumerTag, envelope, message);
+        }
+    }
+
+    /**
+     * Hands a delivered message over to {@link #handleMessage(Message)}
+     * and acknowledges it afterwards.
+     */
+    private void handleDelivery(String consumerTag, Envelope envelope, Message message) throws IOException {
+        boolean logged = getConfiguration().getLogPolicy().isInfoEnabled(LOGGER);
+        try {
+            if (logged) {
+                LOGGER.info("Consumer {}: Received message {}", consumerTag, envelope.getDeliveryTag());
+            }
             handleMessage(message);
         } catch (Throwable t) {
             if (!getConfiguration().isAutoAck()) {
@@ -84,17 +122,24 @@ public abstract class MessageConsumer extends ConsumerContainer.ManagedConsumer
                 LOGGER.warn("Consumer {}: Nacked message {}",
                     new Object[] { consumerTag, envelope.getDeliveryTag(), t });
             }
+            message.release();
             return;
         }
         if (!getConfiguration().isAutoAck()) {
             try {
                 getChannel().basicAck(envelope.getDeliveryTag(), false);
-                LOGGER.debug("Consumer {}: Acked message {}", consumerTag, envelope.getDeliveryTag() );
+                if (logged && LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Consumer {}: Acked message {}", consumerTag, envelope.getDeliveryTag());
+                }
             } catch(IOException e) {
                 LOGGER.error("Consumer {}: Message {} was processed but could not be acknowledged due to an exception when sending the acknowledgement", 
                     new Object[] { consumerTag, envelope.getDeliveryTag(), e });
                 throw e;
+            } finally {
+                message.release();
             }
+        } else {
+            message.release();
         }
     }
 
@@ -0,0 +1,270 @@
+package com.zanox.rabbiteasy.outbox;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>An outbox journal is an append-only queue of records stored on
+ * disk. Records are appended at the tail and removed from the head in
+ * the order they were appended.</p>
+ *
+ * <p>The journal consists of memory mapped segment files of a fixed
+ * size within one directory. A new segment is started when the current
+ * segment is full, and segments are deleted as soon as all their records
+ * were removed. Every record is protected by a CRC32 checksum, so records
+ * torn by a crash are dropped when the journal is opened again.</p>
+ *
+ * <p>By default, appended records are written to the memory mapped files
+ * and survive a crash of the process, but not a crash of the operating
+ * system. Enable synchronous writes to force every change to disk.</p>
+ *
+ * <p>Journals are thread safe. A directory must only be used by one
+ * journal at a time.</p>
+ */
+public class OutboxJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboxJournal.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private final File directory;
+    private final int segmentSize;
+    private final LinkedList<OutboxSegment> segments = new LinkedList<OutboxSegment>();
+
+    private int size;
+    private boolean syncWrites = false;
+    private boolean closed = false;
+
+    private final Lock journalLock = new ReentrantLock();
+
+    public OutboxJournal(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the journal stored in the given directory or creates a new
+     * journal if the directory does not contain any segments.
+     *
+     * @param directory The directory of the segment files
+     * @param segmentSize The size of new segment files in bytes
+     * @throws IOException if the journal cannot be opened
+     */
+    public OutboxJournal(File directory, int segmentSize) throws IOException {
+        if (segmentSize <= OutboxSegment.HEADER_SIZE + OutboxSegment.RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size of " + segmentSize + " bytes is too small");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        if (! directory.isDirectory() && ! directory.mkdirs()) {
+            throw new IOException("Unable to create outbox directory " + directory);
+        }
+        for (File file : listSegmentFiles()) {
+            OutboxSegment segment = OutboxSegment.open(parseIndex(file), file);
+            size += segment.getRecordCount();
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.add(createSegment(0));
+        }
+        deleteRemovedSegments();
+        LOGGER.info("Opened outbox journal in {} with {} records", directory, size);
+    }
+
+    /**
+     * Enables or disables forcing every change of the journal to disk.
+     *
+     * @param syncWrites True to force every change to disk
+     */
+    public void setSyncWrites(boolean syncWrites) {
+        journalLock.lock();
+        try {
+            this.syncWrites = syncWrites;
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record to the tail of the journal.
+     *
+     * @param record The record content
+     * @throws IOException if the journal is closed or the record is larger than a segment
+     */
+    public void append(byte[] record) throws IOException {
+        journalLock.lock();
+        try {
+            checkOpen();
+            if (OutboxSegment.HEADER_SIZE + OutboxSegment.RECORD_HEADER_SIZE + record.length > segmentSize) {
+                throw new IOException("Record of " + record.length + " bytes exceeds the outbox segment size");
+            }
+            OutboxSegment tail = segments.getLast();
+            if (! tail.append(record)) {
+                tail = createSegment(tail.getIndex() + 1);
+                segments.add(tail);
+                tail.append(record);
+            }
+            if (syncWrites) {
+                tail.force();
+            }
+            size++;
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * Reads records from the head of the journal without removing them.
+     *
+     * @param maxRecords The maximum amount of records to read
+     * @return The records in the order they were appended
+     */
+    public List<byte[]> peek(int maxRecords) {
+        journalLock.lock();
+        try {
+            List<byte[]> records = new ArrayList<byte[]>(Math.min(maxRecords, size));
+            for (OutboxSegment segment : segments) {
+                int position = segment.getReadPosition();
+                while (position < segment.getWritePosition()) {
+                    if (records.size() == maxRecords) {
+                        return records;
+                    }
+                    records.add(segment.read(position));
+                    position = segment.next(position);
+                }
+            }
+            return records;
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * Removes records from the head of the journal.
+     *
+     * @param count The amount of records to remove
+     */
+    public void remove(int count) {
+        journalLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            for (int i = 0; i < count && size > 0; i++) {
+                deleteRemovedSegments();
+                segments.getFirst().removeFirst();
+                size--;
+            }
+            deleteRemovedSegments();
+            if (syncWrites) {
+                segments.getFirst().force();
+            }
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the amount of records in the journal.
+     *
+     * @return The amount of records
+     */
+    public int size() {
+        journalLock.lock();
+        try {
+            return size;
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        journalLock.lock();
+        try {
+            return size == 0;
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * Forces all segments to disk and closes the journal.
+     */
+    public void close() {
+        journalLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            for (OutboxSegment segment : segments) {
+                segment.force();
+            }
+            segments.clear();
+            closed = true;
+            LOGGER.info("Closed outbox journal in {}", directory);
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Outbox journal in " + directory + " is closed");
+        }
+    }
+
+    private OutboxSegment createSegment(long index) throws IOException {
+        File file = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        LOGGER.debug("Creating outbox segment {}", file);
+        return OutboxSegment.create(index, file, segmentSize);
+    }
+
+    /**
+     * Deletes the segments at the head whose records were all removed,
+     * but always keeps the segment at the tail.
+     */
+    private void deleteRemovedSegments() {
+        while (segments.size() > 1 && segments.getFirst().getRecordCount() == 0) {
+            OutboxSegment segment = segments.removeFirst();
+            if (! segment.delete()) {
+                LOGGER.warn("Failed to delete outbox segment {}", segment.getFile());
+            }
+        }
+    }
+
+    private File[] listSegmentFiles() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long firstIndex = parseIndex(first);
+                long secondIndex = parseIndex(second);
+                return firstIndex < secondIndex ? -1 : (firstIndex == secondIndex ? 0 : 1);
+            }
+        });
+        return files;
+    }
+
+    private static long parseIndex(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
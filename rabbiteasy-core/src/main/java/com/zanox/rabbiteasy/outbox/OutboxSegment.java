@@ -0,0 +1,221 @@
+package com.zanox.rabbiteasy.outbox;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * <p>A segment is one memory mapped file of an outbox journal.</p>
+ *
+ * <p>The segment starts with a header holding a magic number and the
+ * position of the first record not yet removed from the journal. The
+ * header is followed by the records, each prefixed by its length and
+ * the CRC32 checksum of its content. A length of zero marks the end
+ * of the records.</p>
+ */
+class OutboxSegment {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboxSegment.class);
+
+    static final int MAGIC = 0x52454f42;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 8;
+
+    private static final int READ_POSITION_OFFSET = 4;
+
+    private final long index;
+    private final File file;
+    private final MappedByteBuffer buffer;
+
+    private int readPosition;
+    private int writePosition;
+    private int recordCount;
+
+    private OutboxSegment(long index, File file, MappedByteBuffer buffer) {
+        this.index = index;
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Creates a new empty segment file.
+     *
+     * @param index The index of the segment within the journal
+     * @param file The segment file
+     * @param size The size of the segment in bytes
+     * @return The created segment
+     * @throws IOException if the segment file cannot be created
+     */
+    static OutboxSegment create(long index, File file, int size) throws IOException {
+        OutboxSegment segment = new OutboxSegment(index, file, map(file, size));
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(READ_POSITION_OFFSET, HEADER_SIZE);
+        segment.buffer.putInt(HEADER_SIZE, 0);
+        segment.readPosition = HEADER_SIZE;
+        segment.writePosition = HEADER_SIZE;
+        return segment;
+    }
+
+    /**
+     * Opens an existing segment file and recovers its records. Records
+     * following a record with an invalid checksum (e.g. after a write
+     * was torn by a crash) are dropped.
+     *
+     * @param index The index of the segment within the journal
+     * @param file The segment file
+     * @return The opened segment
+     * @throws IOException if the file is not a valid segment file
+     */
+    static OutboxSegment open(long index, File file) throws IOException {
+        long size = file.length();
+        if (size < HEADER_SIZE + RECORD_HEADER_SIZE || size > Integer.MAX_VALUE) {
+            throw new IOException("File " + file + " is not an outbox segment");
+        }
+        OutboxSegment segment = new OutboxSegment(index, file, map(file, (int) size));
+        if (segment.buffer.getInt(0) != MAGIC) {
+            throw new IOException("File " + file + " is not an outbox segment");
+        }
+        segment.readPosition = segment.buffer.getInt(READ_POSITION_OFFSET);
+        if (segment.readPosition < HEADER_SIZE || segment.readPosition > segment.buffer.capacity()) {
+            throw new IOException("Outbox segment " + file + " has an invalid read position");
+        }
+        segment.recover();
+        return segment;
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(size);
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            // The mapping stays valid after closing the file
+            randomAccessFile.close();
+        }
+    }
+
+    private void recover() {
+        int position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            if (checksum(read(position)) != buffer.getInt(position + 4)) {
+                LOGGER.warn("Dropping records of outbox segment {} from position {} on due to an invalid checksum",
+                        file, position);
+                break;
+            }
+            if (position >= readPosition) {
+                recordCount++;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        writePosition = position;
+        if (readPosition > writePosition) {
+            readPosition = writePosition;
+        }
+        markEnd();
+    }
+
+    /**
+     * Appends a record if there is enough space left in the segment.
+     *
+     * @param record The record content
+     * @return True if the record was appended, false if the segment is full
+     */
+    boolean append(byte[] record) {
+        if (writePosition + RECORD_HEADER_SIZE + record.length > buffer.capacity()) {
+            return false;
+        }
+        int position = writePosition;
+        buffer.position(position + RECORD_HEADER_SIZE);
+        buffer.put(record);
+        buffer.putInt(position + 4, checksum(record));
+        writePosition = position + RECORD_HEADER_SIZE + record.length;
+        markEnd();
+        // The length is written last, so a torn record is never read as complete
+        buffer.putInt(position, record.length);
+        recordCount++;
+        return true;
+    }
+
+    /**
+     * Reads the record at the given position.
+     *
+     * @param position The position of the record
+     * @return The record content
+     */
+    byte[] read(int position) {
+        int length = buffer.getInt(position);
+        byte[] record = new byte[length];
+        buffer.position(position + RECORD_HEADER_SIZE);
+        buffer.get(record);
+        return record;
+    }
+
+    /**
+     * Gets the position of the record following the record at the given position.
+     *
+     * @param position The position of a record
+     * @return The position of the next record
+     */
+    int next(int position) {
+        return position + RECORD_HEADER_SIZE + buffer.getInt(position);
+    }
+
+    /**
+     * Removes the first record not yet removed from the segment.
+     */
+    void removeFirst() {
+        readPosition = next(readPosition);
+        buffer.putInt(READ_POSITION_OFFSET, readPosition);
+        recordCount--;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    boolean delete() {
+        return file.delete();
+    }
+
+    private void markEnd() {
+        if (writePosition + 4 <= buffer.capacity()) {
+            buffer.putInt(writePosition, 0);
+        }
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    long getIndex() {
+        return index;
+    }
+
+    int getReadPosition() {
+        return readPosition;
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,354 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.zanox.rabbiteasy.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>An asynchronous confirmed publisher sends messages to a broker
+ * without waiting for the broker's confirmation of each message. The
+ * confirmations are received asynchronously and complete the
+ * {@link PublishFuture} returned for each message.</p>
+ *
+ * <p>Up to a maximum amount of messages may be waiting for their
+ * confirmation at the same time. Publishing further messages blocks
+ * until confirmations for earlier messages were received.</p>
+ *
+ * <p>Publishing messages via the {@link MessagePublisher} methods waits
+ * for the confirmations before returning. In contrast to the
+ * {@link ConfirmedPublisher}, a list of messages is published at once
+ * and the confirmations of all messages are awaited afterwards.</p>
+ *
+ * <p>If publishing a message fails, it is attempted again according to
+ * the retry policy. Retry attempts run on a scheduled executor, so the
+ * publishing thread is not blocked while waiting for the next attempt.</p>
+ *
+ * <p>Messages published as mandatory or immediate fail with a
+ * {@link MessageReturnedException} if the broker returns them.</p>
+ *
+ * <p>If the channel is lost, all messages waiting for confirmation on
+ * that channel fail and must be published again by the caller.</p>
+ */
+public class AsyncConfirmedPublisher extends DiscretePublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncConfirmedPublisher.class);
+
+    public static final int DEFAULT_MAX_OUTSTANDING_CONFIRMS = 1000;
+
+    private final int maxOutstandingConfirms;
+    private final Semaphore outstandingConfirmPermits;
+    private final Lock publishLock = new ReentrantLock();
+
+    private Channel confirmChannel;
+    private ConfirmTracker confirmTracker;
+    private volatile ScheduledExecutorService retryExecutor = RetryScheduler.getSharedExecutor();
+
+    public AsyncConfirmedPublisher(ConnectionFactory connectionFactory) {
+        this(connectionFactory, DEFAULT_MAX_OUTSTANDING_CONFIRMS);
+    }
+
+    /**
+     * @param connectionFactory The connection factory
+     * @param maxOutstandingConfirms The maximum amount of messages waiting for confirmation
+     */
+    public AsyncConfirmedPublisher(ConnectionFactory connectionFactory, int maxOutstandingConfirms) {
+        super(connectionFactory);
+        if (maxOutstandingConfirms < 1) {
+            throw new IllegalArgumentException("At least one outstanding confirm must be allowed");
+        }
+        this.maxOutstandingConfirms = maxOutstandingConfirms;
+        this.outstandingConfirmPermits = new Semaphore(maxOutstandingConfirms);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(Message message, DeliveryOptions deliveryOptions) throws IOException {
+        publishAsync(message, deliveryOptions).await();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(List<Message> messages, DeliveryOptions deliveryOptions) throws IOException {
+        List<PublishFuture> futures = new ArrayList<PublishFuture>(messages.size());
+        for (Message message : messages) {
+            futures.add(publishAsync(message, deliveryOptions));
+        }
+        for (PublishFuture future : futures) {
+            future.await();
+        }
+    }
+
+    /**
+     * Publishes a message without waiting for its confirmation.
+     *
+     * @see #publishAsync(Message, DeliveryOptions, PublishCallback)
+     * @param message The message to publish
+     * @param deliveryOptions The delivery options
+     * @return The future completed on confirmation
+     */
+    public PublishFuture publishAsync(Message message, DeliveryOptions deliveryOptions) {
+        return publishAsync(message, deliveryOptions, null);
+    }
+
+    /**
+     * <p>Publishes a message without waiting for its confirmation. Blocks
+     * while the maximum amount of messages is waiting for confirmation.</p>
+     *
+     * <p>The returned future is also completed if the message could not be
+     * published at all, so no exception is thrown by this method.</p>
+     *
+     * @param message The message to publish
+     * @param deliveryOptions The delivery options
+     * @param callback The callback notified on confirmation or failure, may be null
+     * @return The future completed on confirmation
+     */
+    public PublishFuture publishAsync(Message message, DeliveryOptions deliveryOptions, PublishCallback callback) {
+        PublishFuture future = new PublishFuture(message, callback);
+        try {
+            applyBackpressure();
+        } catch (IOException e) {
+            future.fail(e);
+            return future;
+        }
+        try {
+            outstandingConfirmPermits.acquire();
+        } catch (InterruptedException e) {
+            LOGGER.warn("Publishing message interrupted while waiting for outstanding confirms", e);
+            Thread.currentThread().interrupt();
+            future.fail(e);
+            return future;
+        }
+        attemptPublish(message, deliveryOptions, future, 1, System.currentTimeMillis());
+        return future;
+    }
+
+    /**
+     * Sets the executor running retry attempts. By default, the
+     * executor shared by all publishers is used.
+     *
+     * @see RetryScheduler#getSharedExecutor()
+     * @param retryExecutor The retry executor
+     */
+    public void setRetryExecutor(ScheduledExecutorService retryExecutor) {
+        if (retryExecutor == null) {
+            throw new IllegalArgumentException("Retry executor must not be null");
+        }
+        this.retryExecutor = retryExecutor;
+    }
+
+    /**
+     * Waits until all messages published so far are confirmed or failed,
+     * e.g. before closing the publisher.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return True if no messages are waiting for confirmation any more
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitOutstandingConfirms(long timeout, TimeUnit unit) throws InterruptedException {
+        if (! outstandingConfirmPermits.tryAcquire(maxOutstandingConfirms, timeout, unit)) {
+            return false;
+        }
+        outstandingConfirmPermits.release(maxOutstandingConfirms);
+        return true;
+    }
+
+    /**
+     * Gets the amount of messages currently waiting for confirmation.
+     *
+     * @return The amount of outstanding confirms
+     */
+    public int getOutstandingConfirms() {
+        return maxOutstandingConfirms - outstandingConfirmPermits.availablePermits();
+    }
+
+    /**
+     * Attempts to publish a message. If the attempt fails and the retry
+     * policy allows, the next attempt is scheduled on the retry executor
+     * instead of waiting for it in the publishing thread.
+     */
+    private void attemptPublish(final Message message, final DeliveryOptions deliveryOptions,
+                                final PublishFuture future, final int attempt, final long firstAttemptTime) {
+        if (attempt > 1) {
+            LOGGER.info("Attempt {} to send message", attempt);
+        }
+        try {
+            publishLock.lock();
+            try {
+                Channel channel = provideChannel();
+                if (! confirmTracker.publish(channel, message, deliveryOptions, future)) {
+                    // The future was already failed when the channel was closed
+                    resetChannel();
+                }
+            } finally {
+                publishLock.unlock();
+            }
+        } catch (IOException e) {
+            retryOrFail(message, deliveryOptions, future, attempt, firstAttemptTime, e);
+        } catch (RuntimeException e) {
+            // E.g. AlreadyClosedException if the channel was closed meanwhile
+            retryOrFail(message, deliveryOptions, future, attempt, firstAttemptTime,
+                    new IOException("Failed to publish message", e));
+        }
+    }
+
+    /**
+     * Schedules the next attempt to publish a message if the retry policy
+     * allows, otherwise releases the message's permit and fails its future.
+     */
+    private void retryOrFail(final Message message, final DeliveryOptions deliveryOptions,
+                             final PublishFuture future, final int attempt, final long firstAttemptTime,
+                             IOException e) {
+        publishLock.lock();
+        try {
+            resetChannel();
+        } finally {
+            publishLock.unlock();
+        }
+        RetryPolicy retryPolicy = getRetryPolicy();
+        if (! retryPolicy.shouldRetry(attempt, System.currentTimeMillis() - firstAttemptTime)) {
+            outstandingConfirmPermits.release();
+            future.fail(e);
+            return;
+        }
+        try {
+            retryExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    attemptPublish(message, deliveryOptions, future, attempt + 1, firstAttemptTime);
+                }
+            }, retryPolicy.getInterval(attempt), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException rejectedException) {
+            LOGGER.warn("Failed to schedule retry attempt", rejectedException);
+            outstandingConfirmPermits.release();
+            future.fail(e);
+        }
+    }
+
+    @Override
+    protected Channel provideChannel() throws IOException {
+        Channel channel = super.provideChannel();
+        if (channel != confirmChannel) {
+            channel.confirmSelect();
+            ConfirmTracker tracker = new ConfirmTracker();
+            channel.addConfirmListener(tracker);
+            channel.addShutdownListener(tracker);
+            confirmChannel = channel;
+            confirmTracker = tracker;
+        }
+        return channel;
+    }
+
+    /**
+     * Tracks the messages waiting for confirmation on one channel
+     * by their publish sequence number.
+     */
+    private class ConfirmTracker implements ConfirmListener, ShutdownListener {
+
+        private final ConcurrentNavigableMap<Long, PublishFuture> outstandingConfirms =
+                new ConcurrentSkipListMap<Long, PublishFuture>();
+
+        /**
+         * Publishes a message and waits for its confirmation. If publishing
+         * fails, the exception is only thrown if the message is still
+         * outstanding. Otherwise the channel was closed meanwhile and the
+         * shutdown listener already failed the future and released its permit.
+         *
+         * @return False if publishing failed and the future was already failed
+         * @throws IOException if publishing failed and the message may be retried
+         */
+        boolean publish(Channel channel, Message message, DeliveryOptions deliveryOptions, PublishFuture future)
+                throws IOException {
+            long sequenceNumber = channel.getNextPublishSeqNo();
+            outstandingConfirms.put(sequenceNumber, future);
+            future.setPublishId(trackReturn(channel, message, deliveryOptions, future));
+            try {
+                message.publish(channel, deliveryOptions, getLogPolicy());
+                return true;
+            } catch (IOException e) {
+                if (outstandingConfirms.remove(sequenceNumber) == null) {
+                    LOGGER.debug("Failed to publish message on a channel which was closed meanwhile", e);
+                    return false;
+                }
+                untrackReturn(future.getPublishId());
+                throw e;
+            } catch (RuntimeException e) {
+                if (outstandingConfirms.remove(sequenceNumber) == null) {
+                    LOGGER.debug("Failed to publish message on a channel which was closed meanwhile", e);
+                    return false;
+                }
+                untrackReturn(future.getPublishId());
+                throw e;
+            }
+        }
+
+        @Override
+        public void handleAck(long deliveryTag, boolean multiple) {
+            complete(deliveryTag, multiple, null);
+        }
+
+        @Override
+        public void handleNack(long deliveryTag, boolean multiple) {
+            complete(deliveryTag, multiple, new IOException("Message was rejected by the broker"));
+        }
+
+        @Override
+        public void shutdownCompleted(ShutdownSignalException cause) {
+            if (outstandingConfirms.isEmpty()) {
+                return;
+            }
+            LOGGER.warn("Channel closed with {} messages waiting for confirmation", outstandingConfirms.size());
+            IOException failure = new IOException("Channel closed before message was confirmed", cause);
+            for (Long sequenceNumber : outstandingConfirms.keySet()) {
+                complete(outstandingConfirms.remove(sequenceNumber), failure);
+            }
+        }
+
+        private void complete(long deliveryTag, boolean multiple, IOException failure) {
+            if (! multiple) {
+                complete(outstandingConfirms.remove(deliveryTag), failure);
+                return;
+            }
+            for (Map.Entry<Long, PublishFuture> entry : outstandingConfirms.headMap(deliveryTag, true).entrySet()) {
+                complete(outstandingConfirms.remove(entry.getKey()), failure);
+            }
+        }
+
+        private void complete(PublishFuture future, IOException failure) {
+            // Only the thread removing a future from the map completes it
+            if (future == null) {
+                return;
+            }
+            outstandingConfirmPermits.release();
+            // A returned message was already failed before its confirmation
+            untrackReturn(future.getPublishId());
+            if (failure == null) {
+                future.confirm();
+            } else {
+                future.fail(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.zanox.rabbiteasy.publisher;
+
+/**
+ * <p>Backpressure defines how a publisher reacts if the broker
+ * blocked publishing by flow control.</p>
+ *
+ * <p>To spill messages to a local buffer instead, use an
+ * {@link OutboxPublisher} which stores messages while the
+ * connection is blocked.</p>
+ */
+public enum Backpressure {
+    /**
+     * The publisher waits until the connection is unblocked or
+     * the backpressure timeout elapsed
+     */
+    BLOCK,
+    /**
+     * The publisher fails immediately while the connection is blocked
+     */
+    FAIL
+}
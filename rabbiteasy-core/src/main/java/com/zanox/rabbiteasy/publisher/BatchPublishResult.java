@@ -0,0 +1,88 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.zanox.rabbiteasy.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of publishing a batch of messages with confirmation,
+ * reported for every message in the order of the published batch.
+ */
+public class BatchPublishResult {
+
+    /**
+     * The outcome of publishing a single message of a batch.
+     */
+    public enum Outcome {
+        /** The broker confirmed the message */
+        CONFIRMED,
+        /** The broker rejected the message on the last attempt */
+        NACKED,
+        /** The broker did not confirm the message in time on the last attempt */
+        TIMED_OUT,
+        /** The message could not be published at all */
+        FAILED
+    }
+
+    private final List<Message> messages;
+    private final Outcome[] outcomes;
+    private int attempts;
+
+    BatchPublishResult(List<Message> messages) {
+        this.messages = messages;
+        this.outcomes = new Outcome[messages.size()];
+    }
+
+    void setOutcome(int index, Outcome outcome) {
+        outcomes[index] = outcome;
+    }
+
+    void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    /**
+     * Gets the outcome of the message at the given index of the batch.
+     *
+     * @param index The index of the message in the batch
+     * @return The outcome of the message
+     */
+    public Outcome getOutcome(int index) {
+        return outcomes[index] == null ? Outcome.FAILED : outcomes[index];
+    }
+
+    /**
+     * Gets the amount of attempts used to publish the batch.
+     *
+     * @return The amount of attempts
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Checks if all messages of the batch were confirmed.
+     *
+     * @return True if all messages were confirmed
+     */
+    public boolean isAllConfirmed() {
+        return getUnconfirmedMessages().isEmpty();
+    }
+
+    /**
+     * Gets the messages which were not confirmed by the broker.
+     *
+     * @return The unconfirmed messages in the order of the batch
+     */
+    public List<Message> getUnconfirmedMessages() {
+        List<Message> unconfirmedMessages = new ArrayList<Message>();
+        for (int i = 0; i < outcomes.length; i++) {
+            if (getOutcome(i) != Outcome.CONFIRMED) {
+                unconfirmedMessages.add(messages.get(i));
+            }
+        }
+        return Collections.unmodifiableList(unconfirmedMessages);
+    }
+}
@@ -0,0 +1,291 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.rabbitmq.client.ConnectionFactory;
+import com.zanox.rabbiteasy.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>A batching publisher collects messages published by any thread and
+ * publishes them in batches on a background thread. A batch is published
+ * as soon as the maximum batch size is reached or the first message of
+ * the batch waited for the linger time.</p>
+ *
+ * <p>Batches are published with the given reliability: Confirmed batches
+ * are published with a single wait for all confirmations and only the
+ * unconfirmed messages are published again, transactional batches are
+ * published within one transaction.</p>
+ *
+ * <p>Every message gets a future which is completed when the message's
+ * batch was published. The blocking {@link MessagePublisher} methods
+ * wait for this future before returning.</p>
+ */
+public class BatchingPublisher implements MessagePublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingPublisher.class);
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    public static final long DEFAULT_LINGER_TIME = 5;
+
+    private final PublisherReliability reliability;
+    private final DiscretePublisher publisher;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+
+    private final Queue<PendingMessage> pendingMessages = new ConcurrentLinkedQueue<PendingMessage>();
+    private final AtomicInteger pendingMessageCount = new AtomicInteger();
+    private final Thread flushThread;
+    // Closing waits for messages being added, so the final flush sees all of them
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    private volatile boolean closed = false;
+
+    public BatchingPublisher(ConnectionFactory connectionFactory, PublisherReliability reliability) {
+        this(connectionFactory, reliability, DEFAULT_MAX_BATCH_SIZE, DEFAULT_LINGER_TIME);
+    }
+
+    /**
+     * @param connectionFactory The connection factory
+     * @param reliability The reliability level batches are published with
+     * @param maxBatchSize The maximum amount of messages per batch
+     * @param lingerTime The maximum time in milliseconds a message waits for further messages
+     */
+    public BatchingPublisher(ConnectionFactory connectionFactory, PublisherReliability reliability,
+                             int maxBatchSize, long lingerTime) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batches must contain at least one message");
+        }
+        this.reliability = reliability;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerTime);
+        if (reliability == PublisherReliability.CONFIRMED) {
+            publisher = new ConfirmedPublisher(connectionFactory);
+        } else if (reliability == PublisherReliability.TRANSACTIONAL) {
+            publisher = new TransactionalPublisher(connectionFactory);
+        } else {
+            publisher = new SimplePublisher(connectionFactory);
+        }
+        flushThread = new Thread(new Flusher(), "rabbiteasy-batching-publisher");
+        flushThread.setDaemon(true);
+        flushThread.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(Message message) throws IOException {
+        publish(message, DeliveryOptions.NONE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(Message message, DeliveryOptions deliveryOptions) throws IOException {
+        publishAsync(message, deliveryOptions).await();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(List<Message> messages) throws IOException {
+        publish(messages, DeliveryOptions.NONE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(List<Message> messages, DeliveryOptions deliveryOptions) throws IOException {
+        List<PublishFuture> futures = new ArrayList<PublishFuture>(messages.size());
+        for (Message message : messages) {
+            futures.add(publishAsync(message, deliveryOptions));
+        }
+        for (PublishFuture future : futures) {
+            future.await();
+        }
+    }
+
+    /**
+     * Adds a message to the current batch without waiting for the batch
+     * to be published.
+     *
+     * @param message The message to publish
+     * @param deliveryOptions The delivery options
+     * @return The future completed when the message's batch was published
+     */
+    public PublishFuture publishAsync(Message message, DeliveryOptions deliveryOptions) {
+        return publishAsync(message, deliveryOptions, null);
+    }
+
+    /**
+     * Adds a message to the current batch without waiting for the batch
+     * to be published.
+     *
+     * @param message The message to publish
+     * @param deliveryOptions The delivery options
+     * @param callback The callback notified when the batch was published, may be null
+     * @return The future completed when the message's batch was published
+     */
+    public PublishFuture publishAsync(Message message, DeliveryOptions deliveryOptions, PublishCallback callback) {
+        PublishFuture future = new PublishFuture(message, callback);
+        int count;
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                future.fail(new IOException("Publisher is closed"));
+                return future;
+            }
+            pendingMessages.offer(new PendingMessage(future, deliveryOptions, System.nanoTime()));
+            count = pendingMessageCount.incrementAndGet();
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        if (count == 1 || count >= maxBatchSize) {
+            LockSupport.unpark(flushThread);
+        }
+        return future;
+    }
+
+    /**
+     * Publishes all pending messages and closes the underlying channel.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        closeLock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        LockSupport.unpark(flushThread);
+        try {
+            flushThread.join();
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while waiting for pending messages to be published", e);
+            Thread.currentThread().interrupt();
+        }
+        // Publish messages left if waiting for the flush thread was interrupted
+        List<PendingMessage> batch = new ArrayList<PendingMessage>();
+        while (drain(batch) > 0) {
+            flush(batch);
+            batch.clear();
+        }
+        publisher.close();
+    }
+
+    private int drain(List<PendingMessage> batch) {
+        PendingMessage pendingMessage;
+        while (batch.size() < maxBatchSize && (pendingMessage = pendingMessages.poll()) != null) {
+            pendingMessageCount.decrementAndGet();
+            batch.add(pendingMessage);
+        }
+        return batch.size();
+    }
+
+    /**
+     * Publishes a batch, split into consecutive messages sharing
+     * the same delivery options.
+     */
+    private void flush(List<PendingMessage> batch) {
+        int start = 0;
+        for (int end = 1; end <= batch.size(); end++) {
+            if (end == batch.size() || batch.get(end).deliveryOptions != batch.get(start).deliveryOptions) {
+                flush(batch.subList(start, end), batch.get(start).deliveryOptions);
+                start = end;
+            }
+        }
+    }
+
+    private void flush(List<PendingMessage> batch, DeliveryOptions deliveryOptions) {
+        List<Message> messages = new ArrayList<Message>(batch.size());
+        for (PendingMessage pendingMessage : batch) {
+            messages.add(pendingMessage.future.getMessage());
+        }
+        LOGGER.debug("Publishing batch of {} messages", messages.size());
+        try {
+            if (reliability == PublisherReliability.CONFIRMED) {
+                BatchPublishResult result = ((ConfirmedPublisher) publisher).publishBatch(messages, deliveryOptions);
+                for (int i = 0; i < batch.size(); i++) {
+                    BatchPublishResult.Outcome outcome = result.getOutcome(i);
+                    if (outcome == BatchPublishResult.Outcome.CONFIRMED) {
+                        batch.get(i).future.confirm();
+                    } else {
+                        batch.get(i).future.fail(new IOException("Message was not confirmed by the broker: " + outcome));
+                    }
+                }
+            } else {
+                publisher.publish(messages, deliveryOptions);
+                for (PendingMessage pendingMessage : batch) {
+                    pendingMessage.future.confirm();
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed to publish batch of {} messages", messages.size(), e);
+            for (PendingMessage pendingMessage : batch) {
+                pendingMessage.future.fail(e);
+            }
+        }
+    }
+
+    private static class PendingMessage {
+
+        private final PublishFuture future;
+        private final DeliveryOptions deliveryOptions;
+        private final long enqueueTime;
+
+        private PendingMessage(PublishFuture future, DeliveryOptions deliveryOptions, long enqueueTime) {
+            this.future = future;
+            this.deliveryOptions = deliveryOptions;
+            this.enqueueTime = enqueueTime;
+        }
+    }
+
+    /**
+     * Waits for pending messages and publishes them as soon as the
+     * batch is full or the oldest message waited for the linger time.
+     */
+    private class Flusher implements Runnable {
+
+        @Override
+        public void run() {
+            List<PendingMessage> batch = new ArrayList<PendingMessage>(maxBatchSize);
+            while (true) {
+                PendingMessage oldestMessage = pendingMessages.peek();
+                if (oldestMessage == null) {
+                    if (closed) {
+                        return;
+                    }
+                    LockSupport.park(this);
+                    continue;
+                }
+                long flushTime = oldestMessage.enqueueTime + lingerNanos;
+                while (! closed && pendingMessageCount.get() < maxBatchSize) {
+                    long remaining = flushTime - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+                drain(batch);
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+}
@@ -1,13 +1,29 @@
 package com.zanox.rabbiteasy.publisher;
 
 import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
 import com.rabbitmq.client.ConnectionFactory;
+import com.zanox.rabbiteasy.ChannelMode;
+import com.zanox.rabbiteasy.ChannelPool;
+import com.zanox.rabbiteasy.LogPolicy;
 import com.zanox.rabbiteasy.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>A confirmed publisher sends messages to a broker
@@ -23,50 +39,302 @@ public class ConfirmedPublisher extends DiscretePublisher {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ConfirmedPublisher.class);
 
+    public static final long DEFAULT_CONFIRM_TIMEOUT = 10000;
+
+    private long confirmTimeout = DEFAULT_CONFIRM_TIMEOUT;
+    private final Map<Channel, BatchConfirmTracker> batchConfirmTrackers =
+            Collections.synchronizedMap(new WeakHashMap<Channel, BatchConfirmTracker>());
+
     public ConfirmedPublisher(ConnectionFactory connectionFactory) {
         super(connectionFactory);
     }
 
+    public ConfirmedPublisher(ChannelPool channelPool) {
+        super(channelPool);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void publish(Message message, DeliveryOptions deliveryOptions) throws IOException {
-        for (int attempt = 1; attempt <= DEFAULT_RETRY_ATTEMPTS; attempt++) {
+        applyBackpressure();
+        long firstAttemptTime = System.currentTimeMillis();
+        for (int attempt = 1; attempt <= getRetryPolicy().getMaxAttempts(); attempt++) {
             if (attempt > 1) {
                 LOGGER.info("Attempt {} to send message", attempt);
             }
 
+            Channel channel = null;
             try {
-                Channel channel = provideChannel();
-                message.publish(channel, deliveryOptions);
-                LOGGER.info("Waiting for publisher ack");
+                channel = provideChannel();
+                String publishId = trackReturn(channel, message, deliveryOptions, null);
+                // Decide once, so the message and its confirmation are logged together
+                boolean logged = getLogPolicy().isInfoEnabled(LOGGER);
+                message.publish(channel, deliveryOptions, logged);
+                if (logged) {
+                    LOGGER.info("Waiting for publisher ack");
+                }
                 channel.waitForConfirmsOrDie();
-                LOGGER.info("Received publisher ack");
+                if (logged) {
+                    LOGGER.info("Received publisher ack");
+                }
+                // The broker returns a message before confirming it
+                untrackReturn(publishId);
+                releaseChannel(channel);
                 return;
             } catch (IOException e) {
-                handleIoException(attempt, e);
+                discardChannel(channel);
+                handleIoException(attempt, firstAttemptTime, e);
             } catch (InterruptedException e) {
-                LOGGER.warn("Publishing message interrupted while waiting for producer ack", e);
-                return;
+                discardChannel(channel);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Publishing message interrupted while waiting for producer ack");
             }
         }
     }
 
     /**
-     * {@inheritDoc}
+     * <p>Publishes all messages and waits once for the confirmation of the
+     * whole batch instead of waiting for each message.</p>
+     *
+     * @see #publishBatch(List, DeliveryOptions)
+     * @throws IOException if not all messages were confirmed
      */
     @Override
     public void publish(List<Message> messages, DeliveryOptions deliveryOptions) throws IOException {
-        for (Message message : messages) {
-            publish(message, deliveryOptions);
+        BatchPublishResult result = publishBatch(messages, deliveryOptions);
+        if (! result.isAllConfirmed()) {
+            throw new IOException(result.getUnconfirmedMessages().size() + " of " + messages.size()
+                    + " messages were not confirmed by the broker");
+        }
+    }
+
+    /**
+     * <p>Publishes all messages and waits once for the confirmation of the
+     * whole batch. Messages which were rejected by the broker or which were not
+     * confirmed within the confirm timeout are published again as long as
+     * the retry policy allows.</p>
+     *
+     * @param messages The messages to publish
+     * @param deliveryOptions The delivery options
+     * @return The outcome for every message of the batch
+     */
+    public BatchPublishResult publishBatch(List<Message> messages, DeliveryOptions deliveryOptions) {
+        BatchPublishResult result = new BatchPublishResult(messages);
+        List<Integer> pendingIndexes = new ArrayList<Integer>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            pendingIndexes.add(i);
+        }
+        try {
+            applyBackpressure();
+        } catch (IOException e) {
+            LOGGER.error("Failed to publish {} messages", messages.size(), e);
+            return result;
+        }
+        RetryPolicy retryPolicy = getRetryPolicy();
+        long firstAttemptTime = System.currentTimeMillis();
+        int attempt = 0;
+        while (! pendingIndexes.isEmpty()
+                && (attempt == 0 || retryPolicy.shouldRetry(attempt, System.currentTimeMillis() - firstAttemptTime))) {
+            attempt++;
+            if (attempt > 1) {
+                LOGGER.info("Attempt {} to send {} unconfirmed messages", attempt, pendingIndexes.size());
+            }
+            Channel channel = null;
+            try {
+                channel = provideChannel();
+                pendingIndexes = publishAndAwaitConfirms(channel, messages, pendingIndexes, deliveryOptions, result);
+                releaseChannel(channel);
+            } catch (IOException e) {
+                discardChannel(channel);
+                try {
+                    handleIoException(attempt, firstAttemptTime, e);
+                } catch (InterruptedIOException interruptedException) {
+                    LOGGER.warn("Publishing messages interrupted while waiting for retry attempt");
+                    break;
+                } catch (IOException finalException) {
+                    LOGGER.error("Failed to publish {} messages", pendingIndexes.size(), finalException);
+                }
+            } catch (InterruptedException e) {
+                LOGGER.warn("Publishing messages interrupted while waiting for producer acks", e);
+                discardChannel(channel);
+                Thread.currentThread().interrupt();
+                break;
+            }
         }
+        result.setAttempts(attempt);
+        return result;
+    }
+
+    /**
+     * Sets the maximum time to wait for the confirmation of a batch.
+     *
+     * @param confirmTimeout The timeout in milliseconds
+     */
+    public void setConfirmTimeout(long confirmTimeout) {
+        this.confirmTimeout = confirmTimeout;
     }
 
     @Override
     protected Channel provideChannel() throws IOException {
         Channel channel = super.provideChannel();
-        channel.confirmSelect();
+        if (! isPooled()) {
+            channel.confirmSelect();
+        }
         return channel;
     }
+
+    @Override
+    protected ChannelMode getChannelMode() {
+        return ChannelMode.CONFIRM;
+    }
+
+    /**
+     * Publishes the pending messages and records the outcome
+     * of each message once the batch is confirmed or timed out.
+     *
+     * @return The indexes of the messages which were not confirmed
+     */
+    private List<Integer> publishAndAwaitConfirms(Channel channel, List<Message> messages, List<Integer> pendingIndexes,
+                                                  DeliveryOptions deliveryOptions, BatchPublishResult result)
+            throws IOException, InterruptedException {
+        BatchConfirmTracker tracker = batchConfirmTrackers.get(channel);
+        if (tracker == null) {
+            tracker = new BatchConfirmTracker();
+            channel.addConfirmListener(tracker);
+            batchConfirmTrackers.put(channel, tracker);
+        }
+        tracker.reset();
+
+        LogPolicy logPolicy = getLogPolicy();
+        // The batch is logged if any of its messages is logged
+        boolean batchLogged = false;
+        long[] sequenceNumbers = new long[pendingIndexes.size()];
+        String[] publishIds = new String[pendingIndexes.size()];
+        for (int i = 0; i < sequenceNumbers.length; i++) {
+            sequenceNumbers[i] = channel.getNextPublishSeqNo();
+            tracker.expect(sequenceNumbers[i]);
+            Message message = messages.get(pendingIndexes.get(i));
+            publishIds[i] = trackReturn(channel, message, deliveryOptions, null);
+            boolean logged = logPolicy.isInfoEnabled(LOGGER);
+            batchLogged |= logged;
+            message.publish(channel, deliveryOptions, logged);
+        }
+        if (batchLogged) {
+            LOGGER.info("Waiting for publisher acks of {} messages", sequenceNumbers.length);
+        }
+        if (! tracker.await(System.currentTimeMillis() + confirmTimeout)) {
+            LOGGER.warn("Timed out waiting for publisher acks");
+        }
+
+        List<Integer> unconfirmedIndexes = new ArrayList<Integer>();
+        for (int i = 0; i < sequenceNumbers.length; i++) {
+            int index = pendingIndexes.get(i);
+            Boolean acked = tracker.getOutcome(sequenceNumbers[i]);
+            if (acked == null) {
+                result.setOutcome(index, BatchPublishResult.Outcome.TIMED_OUT);
+                unconfirmedIndexes.add(index);
+            } else if (acked) {
+                result.setOutcome(index, BatchPublishResult.Outcome.CONFIRMED);
+            } else {
+                result.setOutcome(index, BatchPublishResult.Outcome.NACKED);
+                unconfirmedIndexes.add(index);
+            }
+            // The broker returns a message before confirming or rejecting it
+            if (acked != null) {
+                untrackReturn(publishIds[i]);
+            }
+        }
+        if (batchLogged) {
+            LOGGER.info("Received publisher acks for {} of {} messages",
+                    sequenceNumbers.length - unconfirmedIndexes.size(), sequenceNumbers.length);
+        }
+        return unconfirmedIndexes;
+    }
+
+    /**
+     * Records the confirmations of the messages of the
+     * current batch published on one channel.
+     */
+    private static class BatchConfirmTracker implements ConfirmListener {
+
+        private final NavigableSet<Long> unresolved = new TreeSet<Long>();
+        private final Map<Long, Boolean> outcomes = new HashMap<Long, Boolean>();
+
+        private final Lock trackerLock = new ReentrantLock();
+        private final Condition settled = trackerLock.newCondition();
+
+        void reset() {
+            trackerLock.lock();
+            try {
+                unresolved.clear();
+                outcomes.clear();
+            } finally {
+                trackerLock.unlock();
+            }
+        }
+
+        void expect(long sequenceNumber) {
+            trackerLock.lock();
+            try {
+                unresolved.add(sequenceNumber);
+            } finally {
+                trackerLock.unlock();
+            }
+        }
+
+        boolean await(long deadline) throws InterruptedException {
+            trackerLock.lock();
+            try {
+                while (! unresolved.isEmpty()) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    settled.await(remaining, TimeUnit.MILLISECONDS);
+                }
+                return true;
+            } finally {
+                trackerLock.unlock();
+            }
+        }
+
+        Boolean getOutcome(long sequenceNumber) {
+            trackerLock.lock();
+            try {
+                return outcomes.get(sequenceNumber);
+            } finally {
+                trackerLock.unlock();
+            }
+        }
+
+        @Override
+        public void handleAck(long deliveryTag, boolean multiple) {
+            resolve(deliveryTag, multiple, true);
+        }
+
+        @Override
+        public void handleNack(long deliveryTag, boolean multiple) {
+            resolve(deliveryTag, multiple, false);
+        }
+
+        private void resolve(long deliveryTag, boolean multiple, boolean acked) {
+            trackerLock.lock();
+            try {
+                if (multiple) {
+                    NavigableSet<Long> resolved = unresolved.headSet(deliveryTag, true);
+                    for (Long sequenceNumber : resolved) {
+                        outcomes.put(sequenceNumber, acked);
+                    }
+                    resolved.clear();
+                } else if (unresolved.remove(deliveryTag)) {
+                    outcomes.put(deliveryTag, acked);
+                }
+                settled.signalAll();
+            } finally {
+                trackerLock.unlock();
+            }
+        }
+    }
 }
@@ -3,16 +3,38 @@ package com.zanox.rabbiteasy.publisher;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
+import com.zanox.rabbiteasy.ChannelMode;
+import com.zanox.rabbiteasy.ChannelPool;
+import com.zanox.rabbiteasy.LogPolicy;
 import com.zanox.rabbiteasy.Message;
+import com.zanox.rabbiteasy.SingleConnectionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Discrete publishers manage channels on their own with help of the
- * connection factory they are initialized with.
+ * <p>Discrete publishers manage channels on their own with help of the
+ * connection factory they are initialized with.</p>
+ *
+ * <p>Alternatively, discrete publishers borrow a channel from a channel
+ * pool for every publish operation. Publishers initialized with a channel
+ * pool are thread safe and can be shared.</p>
+ *
+ * <p>If the connection is provided by a {@link SingleConnectionFactory},
+ * publishers apply backpressure while the broker blocks publishing by
+ * flow control: They either wait for the connection to be unblocked or
+ * fail immediately, depending on the configured {@link Backpressure}.</p>
+ *
+ * <p>Messages published as mandatory or immediate are tracked if a
+ * {@link ReturnCallback} is set, so the callback is notified about
+ * messages returned by the broker.</p>
+ *
+ * <p>Statements logged for every published message are only logged if
+ * the publisher's {@link LogPolicy} decides so.</p>
  *
  * @author christian.bick
  */
@@ -22,12 +44,116 @@ public abstract class DiscretePublisher implements MessagePublisher {
 
     public static final int DEFAULT_RETRY_ATTEMPTS = 3;
     public static final int DEFAULT_RETRY_INTERVAL = 1000;
+    public static final long DEFAULT_BACKPRESSURE_TIMEOUT = 10000;
+    public static final int DEFAULT_MAX_TRACKED_RETURNS = 10000;
+
+    /**
+     * The header correlating messages returned by the broker with the published messages
+     */
+    public static final String PUBLISH_ID_HEADER = "x-publish-id";
 
     private Channel channel;
     private ConnectionFactory connectionFactory;
+    private ChannelPool channelPool;
+    private volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    private volatile LogPolicy logPolicy = LogPolicy.FULL;
+
+    private final SingleConnectionFactory flowControlledFactory;
+    private volatile Backpressure backpressure = Backpressure.BLOCK;
+    private volatile long backpressureTimeout = DEFAULT_BACKPRESSURE_TIMEOUT;
+    private final AtomicLong backpressureTime = new AtomicLong();
+    private final ReturnTracker returnTracker = new ReturnTracker(DEFAULT_MAX_TRACKED_RETURNS);
 
     public DiscretePublisher(ConnectionFactory connectionFactory) {
         this.connectionFactory = connectionFactory;
+        this.flowControlledFactory = asFlowControlled(connectionFactory);
+    }
+
+    public DiscretePublisher(ChannelPool channelPool) {
+        this.channelPool = channelPool;
+        this.flowControlledFactory = asFlowControlled(channelPool.getConnectionFactory());
+    }
+
+    private static SingleConnectionFactory asFlowControlled(ConnectionFactory connectionFactory) {
+        if (connectionFactory instanceof SingleConnectionFactory) {
+            return (SingleConnectionFactory) connectionFactory;
+        }
+        return null;
+    }
+
+    /**
+     * Sets the policy deciding whether and when publishing
+     * a message is attempted again after it failed.
+     *
+     * @param retryPolicy The retry policy
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("Retry policy must not be null");
+        }
+        this.retryPolicy = retryPolicy;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the policy deciding if publishing a message is logged.
+     *
+     * @param logPolicy The log policy
+     */
+    public void setLogPolicy(LogPolicy logPolicy) {
+        if (logPolicy == null) {
+            throw new IllegalArgumentException("Log policy must not be null");
+        }
+        this.logPolicy = logPolicy;
+    }
+
+    public LogPolicy getLogPolicy() {
+        return logPolicy;
+    }
+
+    /**
+     * Sets how the publisher reacts while the broker blocks publishing.
+     *
+     * @param backpressure The backpressure to apply
+     * @param timeout The maximum time in milliseconds to wait for the connection to be unblocked
+     */
+    public void setBackpressure(Backpressure backpressure, long timeout) {
+        if (backpressure == null) {
+            throw new IllegalArgumentException("Backpressure must not be null");
+        }
+        this.backpressure = backpressure;
+        this.backpressureTimeout = timeout;
+    }
+
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+
+    /**
+     * Sets the callback notified about messages published as mandatory
+     * or immediate which were returned by the broker.
+     *
+     * @param returnCallback The return callback or null to stop tracking returns
+     */
+    public void setReturnCallback(ReturnCallback returnCallback) {
+        returnTracker.setCallback(returnCallback);
+    }
+
+    public ReturnCallback getReturnCallback() {
+        return returnTracker.getCallback();
+    }
+
+    /**
+     * Gets the total time this publisher waited for the broker
+     * to unblock the connection.
+     *
+     * @return The blocked time in milliseconds
+     */
+    public long getBackpressureTime() {
+        return backpressureTime.get();
     }
 
     /**
@@ -51,6 +177,10 @@ public abstract class DiscretePublisher implements MessagePublisher {
      */
     @Override
     public void close() throws IOException {
+        if (channelPool != null) {
+            LOGGER.debug("Publisher channels are managed by the channel pool");
+            return;
+        }
         if (channel == null) {
             LOGGER.warn("Attempt to close a publisher channel that has not been initialized");
             return;
@@ -65,19 +195,138 @@ public abstract class DiscretePublisher implements MessagePublisher {
     }
 
     /**
-     * Initializes a channel if there is not already an open channel.
+     * Initializes a channel if there is not already an open channel. If
+     * initialized with a channel pool, a channel in the publisher's channel
+     * mode is borrowed from the pool instead.
      *
      * @return The initialized or already open channel.
      * @throws IOException if the channel cannot be initialized
      */
     protected Channel provideChannel() throws IOException {
+        if (channelPool != null) {
+            return channelPool.borrowChannel(getChannelMode());
+        }
         if (channel == null || !channel.isOpen()) {
             Connection connection = connectionFactory.newConnection();
             channel = connection.createChannel();
+            if (flowControlledFactory != null) {
+                flowControlledFactory.monitorFlow(channel);
+            }
         }
         return channel;
     }
 
+    /**
+     * Tracks a message about to be published on the given channel, so it
+     * can be correlated if the broker returns it. Only messages published
+     * as mandatory or immediate are tracked, and only if they are published
+     * with a future or a return callback is set.
+     *
+     * @param channel The channel the message is published on
+     * @param message The message to publish
+     * @param deliveryOptions The delivery options
+     * @param future The future to fail if the message is returned, may be null
+     * @return The publish id or null if the message is not tracked
+     */
+    protected String trackReturn(Channel channel, Message message, DeliveryOptions deliveryOptions,
+                                 PublishFuture future) {
+        if (deliveryOptions == DeliveryOptions.NONE || (future == null && returnTracker.getCallback() == null)) {
+            return null;
+        }
+        returnTracker.attach(channel);
+        return returnTracker.track(message, future);
+    }
+
+    /**
+     * Stops tracking a message, e.g. after the broker confirmed it.
+     *
+     * @param publishId The publish id or null if the message is not tracked
+     */
+    protected void untrackReturn(String publishId) {
+        if (publishId != null) {
+            returnTracker.untrack(publishId);
+        }
+    }
+
+    int getTrackedReturns() {
+        return returnTracker.getTrackedMessages();
+    }
+
+    /**
+     * Applies backpressure if the broker currently blocks publishing.
+     * Must be called before the first attempt to publish, as failed
+     * attempts reset the channel and thereby its flow state.
+     *
+     * @throws IOException if the connection is blocked and the publisher
+     *                     fails immediately or the timeout elapsed
+     */
+    protected void applyBackpressure() throws IOException {
+        if (flowControlledFactory == null || ! flowControlledFactory.isBlocked()) {
+            return;
+        }
+        if (backpressure == Backpressure.FAIL) {
+            throw new IOException("Connection is blocked by the broker");
+        }
+        LOGGER.warn("Connection is blocked by the broker, waiting up to {} ms", backpressureTimeout);
+        long start = System.currentTimeMillis();
+        boolean unblocked;
+        try {
+            unblocked = flowControlledFactory.awaitUnblocked(backpressureTimeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the connection to be unblocked");
+        } finally {
+            backpressureTime.addAndGet(System.currentTimeMillis() - start);
+        }
+        if (! unblocked) {
+            throw new IOException("Connection is still blocked by the broker after " + backpressureTimeout + " ms");
+        }
+    }
+
+    /**
+     * Releases a provided channel after it was used successfully. Borrowed
+     * channels are returned to the channel pool, other channels are kept open.
+     *
+     * @param channel The provided channel
+     */
+    protected void releaseChannel(Channel channel) {
+        if (channelPool != null) {
+            channelPool.returnChannel(channel);
+        }
+    }
+
+    /**
+     * Discards a provided channel after using it failed. Borrowed channels
+     * are invalidated in the channel pool, other channels are reset when
+     * handling the failure.
+     *
+     * @see #handleIoException(int, IOException)
+     * @param channel The provided channel or null if it could not be provided
+     */
+    protected void discardChannel(Channel channel) {
+        if (channelPool != null && channel != null) {
+            channelPool.invalidateChannel(channel);
+        }
+    }
+
+    /**
+     * Checks if the publisher borrows its channels from a channel pool.
+     *
+     * @return True if a channel pool is used
+     */
+    protected boolean isPooled() {
+        return channelPool != null;
+    }
+
+    /**
+     * Gets the mode of the channels borrowed from the channel pool.
+     *
+     * @return The channel mode
+     */
+    protected ChannelMode getChannelMode() {
+        return ChannelMode.PLAIN;
+    }
+
     /**
      * Handles an IOException depending on the already used attempts to
      * send a message. Also performs a soft reset of the currently used channel.
@@ -87,6 +336,40 @@ public abstract class DiscretePublisher implements MessagePublisher {
      * @throws IOException if the maximum amount of attempts is exceeded
      */
     protected void handleIoException(int attempt, IOException ioException) throws IOException {
+        handleIoException(attempt, System.currentTimeMillis(), ioException);
+    }
+
+    /**
+     * Handles an IOException depending on the already used attempts and
+     * the time elapsed since the first attempt to send a message. Waits
+     * for the interval given by the retry policy before returning. Also
+     * performs a soft reset of the currently used channel.
+     *
+     * @param attempt Current attempt count
+     * @param firstAttemptTime The time of the first attempt in milliseconds
+     * @param ioException The thrown exception
+     * @throws IOException if the retry policy does not allow another attempt
+     * @throws InterruptedIOException if interrupted while waiting for the next attempt
+     */
+    protected void handleIoException(int attempt, long firstAttemptTime, IOException ioException) throws IOException {
+        resetChannel();
+        long elapsedTime = System.currentTimeMillis() - firstAttemptTime;
+        if (! retryPolicy.shouldRetry(attempt, elapsedTime)) {
+            throw ioException;
+        }
+        try {
+            Thread.sleep(retryPolicy.getInterval(attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Sending message interrupted while waiting for retry attempt");
+        }
+    }
+
+    /**
+     * Performs a soft reset of the currently used channel, so a new
+     * channel is initialized on the next attempt to send a message.
+     */
+    protected void resetChannel() {
         if (channel != null && channel.isOpen()) {
             try {
                 channel.close();
@@ -95,13 +378,5 @@ public abstract class DiscretePublisher implements MessagePublisher {
             }
         }
         channel = null;
-        if (attempt == DEFAULT_RETRY_ATTEMPTS) {
-            throw ioException;
-        }
-        try {
-            Thread.sleep(DEFAULT_RETRY_INTERVAL);
-        } catch (InterruptedException e) {
-            LOGGER.warn("Sending message interrupted while waiting for retry attempt", e);
-        }
     }
 }
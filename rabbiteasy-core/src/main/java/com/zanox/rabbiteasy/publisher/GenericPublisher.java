@@ -1,6 +1,7 @@
 package com.zanox.rabbiteasy.publisher;
 
 import com.rabbitmq.client.ConnectionFactory;
+import com.zanox.rabbiteasy.ChannelPool;
 import com.zanox.rabbiteasy.Message;
 
 import java.io.IOException;
@@ -37,6 +38,24 @@ public class GenericPublisher implements MessagePublisher {
         }
     }
 
+    /**
+     * <p>Initializes the publisher with a certain level of reliability. All messages
+     * sent by the producer are sent with this level of reliability. Borrows channels
+     * from the given channel pool, so the publisher can be shared between threads.</p>
+     *
+     * @param channelPool The channel pool
+     * @param reliability The reliability level
+     */
+    public GenericPublisher(ChannelPool channelPool, PublisherReliability reliability) {
+        if (reliability == PublisherReliability.CONFIRMED) {
+            publisher = new ConfirmedPublisher(channelPool);
+        } else if (reliability == PublisherReliability.TRANSACTIONAL) {
+            publisher = new TransactionalPublisher(channelPool);
+        } else {
+            publisher = new SimplePublisher(channelPool);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
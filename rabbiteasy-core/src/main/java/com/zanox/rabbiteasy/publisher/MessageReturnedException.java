@@ -0,0 +1,30 @@
+package com.zanox.rabbiteasy.publisher;
+
+import java.io.IOException;
+
+/**
+ * Signals that the broker returned a message published as mandatory
+ * or immediate because it could not be routed or delivered.
+ */
+public class MessageReturnedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int replyCode;
+    private final String replyText;
+
+    public MessageReturnedException(int replyCode, String replyText, String exchange, String routingKey) {
+        super("Message to exchange '" + exchange + "' with routing key '" + routingKey
+                + "' was returned by the broker: " + replyCode + " " + replyText);
+        this.replyCode = replyCode;
+        this.replyText = replyText;
+    }
+
+    public int getReplyCode() {
+        return replyCode;
+    }
+
+    public String getReplyText() {
+        return replyText;
+    }
+}
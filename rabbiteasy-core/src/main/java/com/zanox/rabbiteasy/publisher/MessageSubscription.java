@@ -0,0 +1,24 @@
+package com.zanox.rabbiteasy.publisher;
+
+/**
+ * <p>The subscription of a {@link PublishingSubscriber} to an upstream
+ * source of messages, e.g. a reactive stream. The subscriber signals its
+ * demand for further messages and may cancel the subscription.</p>
+ *
+ * <p>The methods match those of a reactive streams subscription, so
+ * subscriptions of any reactive library are adapted by delegation.</p>
+ */
+public interface MessageSubscription {
+
+    /**
+     * Requests the given amount of further messages from the source.
+     *
+     * @param amount The amount of messages, must be positive
+     */
+    void request(long amount);
+
+    /**
+     * Tells the source to stop sending messages.
+     */
+    void cancel();
+}
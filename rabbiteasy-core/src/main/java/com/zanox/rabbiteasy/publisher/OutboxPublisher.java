@@ -0,0 +1,305 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.rabbitmq.client.Connection;
+import com.zanox.rabbiteasy.ConnectionListener;
+import com.zanox.rabbiteasy.FlowControlListener;
+import com.zanox.rabbiteasy.Message;
+import com.zanox.rabbiteasy.SingleConnectionFactory;
+import com.zanox.rabbiteasy.outbox.OutboxJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>An outbox publisher stores messages in a local {@link OutboxJournal}
+ * while the broker is unreachable or blocks publishing by flow control,
+ * so publishing returns immediately instead of failing. A background
+ * thread replays the stored messages in batches and in the order they
+ * were published as soon as the connection is established or unblocked
+ * again.</p>
+ *
+ * <p>In fallback mode, messages are published directly as long as the
+ * connection is established and no stored messages are waiting for their
+ * replay. In write-ahead mode, every message is stored first and only
+ * published by the background thread.</p>
+ *
+ * <p>Messages are published at least once: A message may be published
+ * again if the process stops after publishing but before removing the
+ * message from the journal.</p>
+ */
+public class OutboxPublisher implements MessagePublisher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OutboxPublisher.class);
+
+    public static final int DEFAULT_REPLAY_BATCH_SIZE = 100;
+    public static final long DEFAULT_REPLAY_INTERVAL = 1000;
+
+    /**
+     * Decides when messages are stored in the outbox journal.
+     */
+    public enum Mode {
+        /**
+         * Messages are only stored if they cannot be published directly.
+         */
+        FALLBACK,
+        /**
+         * Messages are always stored and published by the background thread.
+         */
+        WRITE_AHEAD
+    }
+
+    private final SingleConnectionFactory connectionFactory;
+    private final OutboxJournal journal;
+    private final Mode mode;
+    private final PublisherReliability reliability;
+    private final DiscretePublisher publisher;
+    private final ReplayTrigger replayTrigger = new ReplayTrigger();
+    private final Lock publishLock = new ReentrantLock();
+    private final Thread replayThread;
+
+    private volatile boolean connected = true;
+    private volatile boolean blocked;
+    private volatile boolean closed = false;
+
+    public OutboxPublisher(SingleConnectionFactory connectionFactory, PublisherReliability reliability,
+                           OutboxJournal journal) {
+        this(connectionFactory, reliability, journal, Mode.FALLBACK);
+    }
+
+    /**
+     * @param connectionFactory The connection factory
+     * @param reliability The reliability level messages are published with
+     * @param journal The journal storing messages, closed together with the publisher
+     * @param mode The mode deciding when messages are stored
+     */
+    public OutboxPublisher(SingleConnectionFactory connectionFactory, PublisherReliability reliability,
+                           OutboxJournal journal, Mode mode) {
+        this.connectionFactory = connectionFactory;
+        this.journal = journal;
+        this.mode = mode;
+        this.reliability = reliability;
+        if (reliability == PublisherReliability.CONFIRMED) {
+            publisher = new ConfirmedPublisher(connectionFactory);
+        } else if (reliability == PublisherReliability.TRANSACTIONAL) {
+            publisher = new TransactionalPublisher(connectionFactory);
+        } else {
+            publisher = new SimplePublisher(connectionFactory);
+        }
+        // Failed attempts are stored in the journal instead of retried
+        publisher.setRetryPolicy(RetryPolicy.NO_RETRY);
+        blocked = connectionFactory.isBlocked();
+        connectionFactory.registerListener(replayTrigger);
+        connectionFactory.registerFlowControlListener(replayTrigger);
+        replayThread = new Thread(new Replayer(), "rabbiteasy-outbox-publisher");
+        replayThread.setDaemon(true);
+        replayThread.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(Message message) throws IOException {
+        publish(message, DeliveryOptions.NONE);
+    }
+
+    /**
+     * Publishes the message directly or stores it in the outbox journal.
+     *
+     * @throws IOException if the message can neither be published nor stored
+     */
+    @Override
+    public void publish(Message message, DeliveryOptions deliveryOptions) throws IOException {
+        if (closed) {
+            throw new IOException("Publisher is closed");
+        }
+        if (mode == Mode.FALLBACK && connected && ! blocked && journal.isEmpty()) {
+            try {
+                publishLock.lock();
+                try {
+                    publisher.publish(message, deliveryOptions);
+                } finally {
+                    publishLock.unlock();
+                }
+                return;
+            } catch (IOException e) {
+                LOGGER.warn("Failed to publish message, storing it in the outbox", e);
+            } catch (RuntimeException e) {
+                // E.g. AlreadyClosedException during a failover, before the connection loss was noticed
+                LOGGER.warn("Failed to publish message, storing it in the outbox", e);
+            }
+        }
+        journal.append(new OutboxRecord(message, deliveryOptions).encode());
+        LockSupport.unpark(replayThread);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(List<Message> messages) throws IOException {
+        publish(messages, DeliveryOptions.NONE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(List<Message> messages, DeliveryOptions deliveryOptions) throws IOException {
+        for (Message message : messages) {
+            publish(message, deliveryOptions);
+        }
+    }
+
+    /**
+     * Gets the amount of messages stored in the outbox journal.
+     *
+     * @return The amount of stored messages
+     */
+    public int getStoredMessages() {
+        return journal.size();
+    }
+
+    /**
+     * Stops replaying stored messages and closes the journal. Messages
+     * still stored are replayed when the journal is opened again.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        connectionFactory.removeConnectionListener(replayTrigger);
+        connectionFactory.removeFlowControlListener(replayTrigger);
+        LockSupport.unpark(replayThread);
+        try {
+            replayThread.join();
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while waiting for the outbox replay to stop", e);
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+        publisher.close();
+    }
+
+    /**
+     * Replays the oldest stored messages sharing the same delivery options.
+     *
+     * @throws IOException if the messages could not be published
+     */
+    private void replay() throws IOException {
+        List<byte[]> records = journal.peek(DEFAULT_REPLAY_BATCH_SIZE);
+        List<Message> messages = new ArrayList<Message>(records.size());
+        DeliveryOptions deliveryOptions = null;
+        for (byte[] record : records) {
+            OutboxRecord outboxRecord;
+            try {
+                outboxRecord = OutboxRecord.decode(record);
+            } catch (IOException e) {
+                if (! messages.isEmpty()) {
+                    break;
+                }
+                LOGGER.error("Dropping malformed outbox record", e);
+                journal.remove(1);
+                return;
+            }
+            if (deliveryOptions != null && outboxRecord.getDeliveryOptions() != deliveryOptions) {
+                break;
+            }
+            deliveryOptions = outboxRecord.getDeliveryOptions();
+            messages.add(outboxRecord.getMessage());
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+        LOGGER.debug("Replaying {} messages from the outbox", messages.size());
+        publishLock.lock();
+        try {
+            if (reliability != PublisherReliability.CONFIRMED) {
+                publisher.publish(messages, deliveryOptions);
+                journal.remove(messages.size());
+                return;
+            }
+            // Keep the order by removing only the confirmed messages up to the first unconfirmed one
+            BatchPublishResult result = ((ConfirmedPublisher) publisher).publishBatch(messages, deliveryOptions);
+            int confirmed = 0;
+            while (confirmed < messages.size() && result.getOutcome(confirmed) == BatchPublishResult.Outcome.CONFIRMED) {
+                confirmed++;
+            }
+            journal.remove(confirmed);
+            if (confirmed < messages.size()) {
+                throw new IOException((messages.size() - confirmed) + " replayed messages were not confirmed");
+            }
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    /**
+     * Replays stored messages while the connection is established.
+     */
+    private class Replayer implements Runnable {
+
+        @Override
+        public void run() {
+            while (! closed) {
+                if (! connected || blocked || journal.isEmpty()) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(DEFAULT_REPLAY_INTERVAL));
+                    continue;
+                }
+                try {
+                    replay();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to replay messages from the outbox, next attempt in {} ms",
+                            DEFAULT_REPLAY_INTERVAL, e);
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(DEFAULT_REPLAY_INTERVAL));
+                } catch (RuntimeException e) {
+                    // Keep the only replay thread alive, e.g. if the channel was closed during a failover
+                    LOGGER.error("Unexpected failure replaying messages from the outbox, next attempt in {} ms",
+                            DEFAULT_REPLAY_INTERVAL, e);
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(DEFAULT_REPLAY_INTERVAL));
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts replaying stored messages once the connection is established or unblocked again.
+     */
+    private class ReplayTrigger implements ConnectionListener, FlowControlListener {
+
+        @Override
+        public void onConnectionEstablished(Connection connection) {
+            connected = true;
+            LockSupport.unpark(replayThread);
+        }
+
+        @Override
+        public void onConnectionLost(Connection connection) {
+            connected = false;
+        }
+
+        @Override
+        public void onConnectionClosed(Connection connection) {
+            connected = false;
+        }
+
+        @Override
+        public void onConnectionBlocked(Connection connection) {
+            blocked = true;
+        }
+
+        @Override
+        public void onConnectionUnblocked(Connection connection) {
+            blocked = false;
+            LockSupport.unpark(replayThread);
+        }
+    }
+}
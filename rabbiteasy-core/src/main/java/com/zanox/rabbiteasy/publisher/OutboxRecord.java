@@ -0,0 +1,239 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Envelope;
+import com.zanox.rabbiteasy.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Encodes a message and its delivery options to an outbox
+ * journal record and decodes it again.</p>
+ *
+ * <p>Header values are restored with their type if they are strings,
+ * numbers, booleans, dates or byte arrays. Other header values are
+ * restored as strings.</p>
+ */
+class OutboxRecord {
+
+    private static final byte VERSION = 1;
+
+    private static final byte TYPE_NULL = 'V';
+    private static final byte TYPE_STRING = 'S';
+    private static final byte TYPE_INTEGER = 'I';
+    private static final byte TYPE_LONG = 'L';
+    private static final byte TYPE_SHORT = 's';
+    private static final byte TYPE_BYTE = 'b';
+    private static final byte TYPE_DOUBLE = 'D';
+    private static final byte TYPE_FLOAT = 'F';
+    private static final byte TYPE_BOOLEAN = 'B';
+    private static final byte TYPE_DATE = 'T';
+    private static final byte TYPE_BYTES = 'x';
+
+    private final Message message;
+    private final DeliveryOptions deliveryOptions;
+
+    OutboxRecord(Message message, DeliveryOptions deliveryOptions) {
+        this.message = message;
+        this.deliveryOptions = deliveryOptions;
+    }
+
+    Message getMessage() {
+        return message;
+    }
+
+    DeliveryOptions getDeliveryOptions() {
+        return deliveryOptions;
+    }
+
+    /**
+     * Encodes the message and its delivery options.
+     *
+     * @return The record content
+     * @throws IOException if a header value cannot be encoded
+     */
+    byte[] encode() throws IOException {
+        BasicProperties properties = message.getBasicProperties();
+        byte[] body = message.getBodyContent();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeUTF(message.getExchange());
+        out.writeUTF(message.getRoutingKey());
+        out.writeByte(deliveryOptions.ordinal());
+        writeString(out, properties.getContentType());
+        writeString(out, properties.getContentEncoding());
+        writeInteger(out, properties.getDeliveryMode());
+        writeInteger(out, properties.getPriority());
+        writeString(out, properties.getCorrelationId());
+        writeString(out, properties.getReplyTo());
+        writeString(out, properties.getExpiration());
+        writeString(out, properties.getMessageId());
+        writeValue(out, properties.getTimestamp());
+        writeString(out, properties.getType());
+        writeString(out, properties.getUserId());
+        writeString(out, properties.getAppId());
+        writeString(out, properties.getClusterId());
+        Map<String, Object> headers = properties.getHeaders();
+        if (headers == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(headers.size());
+            for (Map.Entry<String, Object> header : headers.entrySet()) {
+                out.writeUTF(header.getKey());
+                writeValue(out, header.getValue());
+            }
+        }
+        out.writeInt(body.length);
+        out.write(body);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a message and its delivery options.
+     *
+     * @param record The record content
+     * @return The decoded record
+     * @throws IOException if the record is malformed
+     */
+    static OutboxRecord decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported outbox record version " + version);
+        }
+        String exchange = in.readUTF();
+        String routingKey = in.readUTF();
+        byte deliveryOptionsOrdinal = in.readByte();
+        if (deliveryOptionsOrdinal < 0 || deliveryOptionsOrdinal >= DeliveryOptions.values().length) {
+            throw new IOException("Invalid delivery options " + deliveryOptionsOrdinal + " in outbox record");
+        }
+        DeliveryOptions deliveryOptions = DeliveryOptions.values()[deliveryOptionsOrdinal];
+        BasicProperties.Builder builder = new BasicProperties.Builder()
+                .contentType(readString(in))
+                .contentEncoding(readString(in))
+                .deliveryMode(readInteger(in))
+                .priority(readInteger(in))
+                .correlationId(readString(in))
+                .replyTo(readString(in))
+                .expiration(readString(in))
+                .messageId(readString(in))
+                .timestamp((Date) readValue(in))
+                .type(readString(in))
+                .userId(readString(in))
+                .appId(readString(in))
+                .clusterId(readString(in));
+        int headerCount = in.readInt();
+        if (headerCount >= 0) {
+            Map<String, Object> headers = new HashMap<String, Object>(headerCount * 2);
+            for (int i = 0; i < headerCount; i++) {
+                headers.put(in.readUTF(), readValue(in));
+            }
+            builder.headers(headers);
+        }
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        Envelope envelope = new Envelope(0, false, exchange, routingKey);
+        return new OutboxRecord(new Message(envelope, builder.build(), body), deliveryOptions);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeInteger(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInputStream in) throws IOException {
+        return in.readBoolean() ? Integer.valueOf(in.readInt()) : null;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Short) {
+            out.writeByte(TYPE_SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(TYPE_BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Date) {
+            out.writeByte(TYPE_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof byte[]) {
+            out.writeByte(TYPE_BYTES);
+            out.writeInt(((byte[]) value).length);
+            out.write((byte[]) value);
+        } else {
+            byte[] string = value.toString().getBytes("UTF-8");
+            out.writeByte(TYPE_STRING);
+            out.writeInt(string.length);
+            out.write(string);
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_SHORT:
+                return in.readShort();
+            case TYPE_BYTE:
+                return in.readByte();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_FLOAT:
+                return in.readFloat();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_DATE:
+                return new Date(in.readLong());
+            case TYPE_BYTES:
+            case TYPE_STRING:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return type == TYPE_BYTES ? bytes : new String(bytes, "UTF-8");
+            default:
+                throw new IOException("Unknown outbox record value type " + type);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.zanox.rabbiteasy.Message;
+
+/**
+ * <p>A publish callback is notified as soon as the outcome of
+ * an asynchronously published message is known.</p>
+ *
+ * <p>Callbacks are invoked on the connection's thread receiving
+ * the broker's confirmation and must therefore not block.</p>
+ */
+public interface PublishCallback {
+
+    /**
+     * Invoked when the broker confirmed the message.
+     *
+     * @param message The published message
+     */
+    void onConfirmed(Message message);
+
+    /**
+     * Invoked when the broker rejected the message or the
+     * message could not be published or confirmed at all.
+     *
+     * @param message The message
+     * @param cause The reason of the failure
+     */
+    void onFailed(Message message, Throwable cause);
+}
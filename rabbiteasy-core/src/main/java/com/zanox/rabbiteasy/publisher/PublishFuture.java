@@ -0,0 +1,170 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.zanox.rabbiteasy.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>The pending outcome of an asynchronously published message.</p>
+ *
+ * <p>The future is done as soon as the broker confirmed or rejected the
+ * message or the message could not be published at all. Getting the result
+ * of a failed publish throws an {@link ExecutionException} with the cause
+ * of the failure. Publishing cannot be cancelled.</p>
+ */
+public class PublishFuture implements Future<Message> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublishFuture.class);
+
+    private final Message message;
+    private final PublishCallback callback;
+    private final CountDownLatch doneLatch = new CountDownLatch(1);
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private volatile Throwable failure;
+    private volatile String publishId;
+
+    PublishFuture(Message message, PublishCallback callback) {
+        this.message = message;
+        this.callback = callback;
+    }
+
+    /**
+     * Gets the message published by this future.
+     *
+     * @return The message
+     */
+    public Message getMessage() {
+        return message;
+    }
+
+    String getPublishId() {
+        return publishId;
+    }
+
+    void setPublishId(String publishId) {
+        this.publishId = publishId;
+    }
+
+    /**
+     * Completes the future successfully.
+     *
+     * @return True if the future was completed by this call
+     */
+    boolean confirm() {
+        if (! completed.compareAndSet(false, true)) {
+            return false;
+        }
+        doneLatch.countDown();
+        if (callback != null) {
+            try {
+                callback.onConfirmed(message);
+            } catch (RuntimeException e) {
+                LOGGER.error("Publish callback failed on confirmation", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Completes the future with the given failure.
+     *
+     * @param cause The reason of the failure
+     * @return True if the future was completed by this call
+     */
+    boolean fail(Throwable cause) {
+        if (! completed.compareAndSet(false, true)) {
+            return false;
+        }
+        failure = cause;
+        doneLatch.countDown();
+        if (callback != null) {
+            try {
+                callback.onFailed(message, cause);
+            } catch (RuntimeException e) {
+                LOGGER.error("Publish callback failed on failure", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Publishing cannot be cancelled.
+     *
+     * @return Always false
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return doneLatch.getCount() == 0;
+    }
+
+    /**
+     * Checks if the message was confirmed by the broker.
+     *
+     * @return True if the future is done and the message was confirmed
+     */
+    public boolean isConfirmed() {
+        return isDone() && failure == null;
+    }
+
+    @Override
+    public Message get() throws InterruptedException, ExecutionException {
+        doneLatch.await();
+        return getResult();
+    }
+
+    @Override
+    public Message get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (! doneLatch.await(timeout, unit)) {
+            throw new TimeoutException("Message was not confirmed within " + timeout + " " + unit);
+        }
+        return getResult();
+    }
+
+    /**
+     * Waits until the future is done and rethrows a failure as IOException
+     * as expected by the blocking {@link MessagePublisher} methods.
+     *
+     * @throws IOException if publishing the message failed
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    void await() throws IOException {
+        try {
+            get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Publishing message interrupted while waiting for producer ack");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to publish message", cause);
+        }
+    }
+
+    private Message getResult() throws ExecutionException {
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,164 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.zanox.rabbiteasy.Message;
+import com.zanox.rabbiteasy.MessageWriter;
+import com.zanox.rabbiteasy.codec.MessageCodec;
+import com.zanox.rabbiteasy.codec.MessageCodecRegistry;
+import com.zanox.rabbiteasy.compression.CompressionRegistry;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * <p>A publish template captures everything about publishing messages
+ * to a fixed destination which does not change from message to message:
+ * The exchange, the routing key, the message properties, the codec for
+ * object bodies and the delivery options.</p>
+ *
+ * <p>The message properties are resolved once when creating the template,
+ * including the delivery mode of persistent messages and the content type
+ * and encoding of each kind of body. Creating a message from the template
+ * therefore only encodes the body and shares the resolved properties.</p>
+ *
+ * <p>Templates are immutable and can be shared by all threads.</p>
+ */
+public final class PublishTemplate {
+
+    private static final Charset CHARSET = Message.DEFAULT_MESSAGE_CHARSET;
+
+    private final String exchange;
+    private final String routingKey;
+    private final boolean persistent;
+    private final DeliveryOptions deliveryOptions;
+    private final MessageCodec objectCodec;
+
+    private final BasicProperties binaryProperties;
+    private final BasicProperties textProperties;
+    private final BasicProperties objectProperties;
+
+    /**
+     * Creates a template encoding object bodies with the current default object codec.
+     *
+     * @see MessageCodecRegistry#getDefaultObjectCodec()
+     */
+    public PublishTemplate(String exchange, String routingKey, BasicProperties basicProperties,
+                           boolean persistent, DeliveryOptions deliveryOptions) {
+        this(exchange, routingKey, basicProperties, persistent, deliveryOptions,
+                MessageCodecRegistry.getDefaultObjectCodec());
+    }
+
+    /**
+     * @param exchange The exchange to publish to
+     * @param routingKey The routing key to publish with
+     * @param basicProperties The base properties of all messages
+     * @param persistent True to publish persistent messages
+     * @param deliveryOptions The delivery options to publish with
+     * @param objectCodec The codec encoding object bodies
+     */
+    public PublishTemplate(String exchange, String routingKey, BasicProperties basicProperties,
+                           boolean persistent, DeliveryOptions deliveryOptions, MessageCodec objectCodec) {
+        if (basicProperties == null || deliveryOptions == null || objectCodec == null) {
+            throw new IllegalArgumentException("Properties, delivery options and codec must not be null");
+        }
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.persistent = persistent;
+        this.deliveryOptions = deliveryOptions;
+        this.objectCodec = objectCodec;
+
+        BasicProperties.Builder builder = basicProperties.builder();
+        if (persistent) {
+            builder.deliveryMode(Message.DELIVERY_MODE_PERSISTENT);
+        }
+        this.binaryProperties = builder.build();
+        this.textProperties = builder.contentType(Message.TEXT_PLAIN)
+                .contentEncoding(CHARSET.name())
+                .build();
+        this.objectProperties = builder.contentType(objectCodec.getContentType())
+                .contentEncoding(CHARSET.name())
+                .build();
+    }
+
+    /**
+     * <p>Creates a message with the given body. Byte arrays are taken
+     * as is, strings and primitive types are written as plain text and
+     * all other objects are encoded with the template's object codec.</p>
+     *
+     * <p>The created message is a new message and may be modified, e.g.
+     * to add headers, without affecting the template.</p>
+     *
+     * @param body The message body, may be null for an empty body
+     * @return The message
+     */
+    public Message createMessage(Object body) {
+        if (body == null) {
+            return wrap(binaryProperties, null);
+        }
+        if (body instanceof byte[]) {
+            return wrap(binaryProperties, (byte[]) body);
+        }
+        if (MessageCodecRegistry.isPlainTextType(body.getClass())) {
+            return wrap(textProperties, String.valueOf(body).getBytes(CHARSET));
+        }
+        byte[] bodyContent;
+        try {
+            bodyContent = objectCodec.encode(body, CHARSET);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return wrap(objectProperties, bodyContent);
+    }
+
+    /**
+     * Creates a message with the given body and publishes it
+     * with the template's delivery options.
+     *
+     * @see #createMessage(Object)
+     * @param publisher The publisher to publish with
+     * @param body The message body
+     * @return The published message
+     * @throws IOException if publishing the message failed
+     */
+    public Message publish(MessagePublisher publisher, Object body) throws IOException {
+        Message message = createMessage(body);
+        publisher.publish(message, deliveryOptions);
+        return message;
+    }
+
+    private Message wrap(BasicProperties basicProperties, byte[] bodyContent) {
+        Message message = new Message(basicProperties)
+                .exchange(exchange)
+                .routingKey(routingKey);
+        if (bodyContent == null) {
+            return message;
+        }
+        // Only compressed bodies need to modify the shared properties
+        if (CompressionRegistry.getCompressorForSize(bodyContent.length) != null) {
+            new MessageWriter(message).writeBodyContent(bodyContent);
+        } else {
+            message.body(bodyContent);
+        }
+        return message;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public String getRoutingKey() {
+        return routingKey;
+    }
+
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    public DeliveryOptions getDeliveryOptions() {
+        return deliveryOptions;
+    }
+
+    public BasicProperties getBasicProperties() {
+        return binaryProperties;
+    }
+}
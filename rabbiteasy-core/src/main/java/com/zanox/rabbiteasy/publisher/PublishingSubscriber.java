@@ -0,0 +1,262 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.zanox.rabbiteasy.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>A subscriber publishing the messages of an upstream source, e.g. a
+ * reactive stream, with an {@link AsyncConfirmedPublisher}. The demand
+ * signalled to the source follows the broker's confirmations: Initially,
+ * as many messages are requested as may wait for confirmation at the
+ * same time, and one more message is requested for every confirmation.
+ * This way, backpressure reaches from the broker to the source.</p>
+ *
+ * <p>The subscriber follows the reactive streams signals (subscribe, next,
+ * error and complete) without depending on any reactive library, so it is
+ * adapted to the subscriber type of any library by delegation.</p>
+ *
+ * <p>The subscriber is done when the source completed and all published
+ * messages were confirmed, or when publishing a message failed, the source
+ * failed or the subscription was cancelled. A failed message cancels the
+ * subscription, as messages following it must not overtake it.</p>
+ *
+ * <p>Further messages are requested on the request executor instead of the
+ * connection's thread receiving the confirmation, as sources may send the
+ * requested messages within the same call.</p>
+ */
+public class PublishingSubscriber {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublishingSubscriber.class);
+
+    public static final int DEFAULT_MAX_OUTSTANDING_CONFIRMS = 100;
+
+    private static final long REQUEST_THREAD_KEEP_ALIVE = 60000;
+    private static final AtomicInteger REQUEST_THREAD_COUNT = new AtomicInteger();
+
+    private final AsyncConfirmedPublisher publisher;
+    private final DeliveryOptions deliveryOptions;
+    private final int maxOutstandingConfirms;
+    private final Executor requestExecutor;
+    private final PublishCallback confirmCallback = new ConfirmCallback();
+
+    private final AtomicReference<MessageSubscription> subscription = new AtomicReference<MessageSubscription>();
+    private final AtomicInteger outstandingConfirms = new AtomicInteger();
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final CountDownLatch doneLatch = new CountDownLatch(1);
+    private volatile boolean sourceDone;
+    private volatile Throwable failure;
+
+    /**
+     * Creates a subscriber requesting further messages on its own thread,
+     * as the source may publish the requested messages within the request,
+     * which may block due to backpressure.
+     */
+    public PublishingSubscriber(AsyncConfirmedPublisher publisher, DeliveryOptions deliveryOptions) {
+        this(publisher, deliveryOptions, DEFAULT_MAX_OUTSTANDING_CONFIRMS, newRequestExecutor());
+    }
+
+    /**
+     * @param publisher The publisher to publish with
+     * @param deliveryOptions The delivery options to publish with
+     * @param maxOutstandingConfirms The maximum amount of messages requested but not yet
+     *                               confirmed, should not exceed the publisher's maximum
+     * @param requestExecutor The executor requesting further messages from the source
+     */
+    public PublishingSubscriber(AsyncConfirmedPublisher publisher, DeliveryOptions deliveryOptions,
+                                int maxOutstandingConfirms, Executor requestExecutor) {
+        if (maxOutstandingConfirms < 1) {
+            throw new IllegalArgumentException("At least one outstanding confirm must be allowed");
+        }
+        this.publisher = publisher;
+        this.deliveryOptions = deliveryOptions;
+        this.maxOutstandingConfirms = maxOutstandingConfirms;
+        this.requestExecutor = requestExecutor;
+    }
+
+    /**
+     * Creates an executor with a single daemon thread which
+     * terminates while idle, so it needs not to be shut down.
+     */
+    private static Executor newRequestExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                REQUEST_THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "rabbiteasy-subscriber-request-" + REQUEST_THREAD_COUNT.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Receives the subscription to the source and requests the first
+     * messages. A second subscription is cancelled immediately.
+     *
+     * @param subscription The subscription
+     */
+    public void onSubscribe(MessageSubscription subscription) {
+        if (subscription == null) {
+            throw new NullPointerException("Subscription must not be null");
+        }
+        if (! this.subscription.compareAndSet(null, subscription)) {
+            LOGGER.warn("Cancelling subscription as the subscriber is already subscribed");
+            subscription.cancel();
+            return;
+        }
+        subscription.request(maxOutstandingConfirms);
+    }
+
+    /**
+     * Publishes the next message of the source without waiting for its confirmation.
+     *
+     * @param message The message
+     */
+    public void onNext(Message message) {
+        if (message == null) {
+            throw new NullPointerException("Message must not be null");
+        }
+        if (isDone()) {
+            LOGGER.debug("Dropping message received after the subscriber is done");
+            return;
+        }
+        outstandingConfirms.incrementAndGet();
+        publisher.publishAsync(message, deliveryOptions, confirmCallback);
+    }
+
+    /**
+     * Receives the failure of the source. Messages already published
+     * are still confirmed, but the subscriber is done immediately.
+     *
+     * @param cause The failure of the source
+     */
+    public void onError(Throwable cause) {
+        if (cause == null) {
+            throw new NullPointerException("Cause must not be null");
+        }
+        finish(cause);
+    }
+
+    /**
+     * Receives the completion of the source. The subscriber is done as
+     * soon as all published messages are confirmed.
+     */
+    public void onComplete() {
+        sourceDone = true;
+        finishIfConfirmed();
+    }
+
+    /**
+     * Cancels the subscription to the source.
+     */
+    public void cancel() {
+        finish(new CancellationException("Subscription was cancelled"));
+    }
+
+    /**
+     * Waits until the subscriber is done.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return True if the subscriber is done
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitDone(long timeout, TimeUnit unit) throws InterruptedException {
+        return doneLatch.await(timeout, unit);
+    }
+
+    public boolean isDone() {
+        return done.get();
+    }
+
+    /**
+     * Gets the reason why the subscriber is done before all messages
+     * of the source were published and confirmed.
+     *
+     * @return The failure or null if all messages were confirmed
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Gets the amount of published messages waiting for confirmation.
+     *
+     * @return The amount of outstanding confirms
+     */
+    public int getOutstandingConfirms() {
+        return outstandingConfirms.get();
+    }
+
+    private void request() {
+        final MessageSubscription currentSubscription = subscription.get();
+        try {
+            requestExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (! isDone()) {
+                        currentSubscription.request(1);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Failed to request further messages", e);
+            finish(e);
+        }
+    }
+
+    private void finishIfConfirmed() {
+        if (sourceDone && outstandingConfirms.get() == 0 && done.compareAndSet(false, true)) {
+            doneLatch.countDown();
+        }
+    }
+
+    private void finish(Throwable cause) {
+        if (! done.compareAndSet(false, true)) {
+            return;
+        }
+        failure = cause;
+        MessageSubscription currentSubscription = subscription.get();
+        if (currentSubscription != null) {
+            currentSubscription.cancel();
+        }
+        doneLatch.countDown();
+    }
+
+    private class ConfirmCallback implements PublishCallback {
+
+        @Override
+        public void onConfirmed(Message message) {
+            outstandingConfirms.decrementAndGet();
+            if (sourceDone) {
+                finishIfConfirmed();
+            } else if (! isDone()) {
+                request();
+            }
+        }
+
+        @Override
+        public void onFailed(Message message, Throwable cause) {
+            outstandingConfirms.decrementAndGet();
+            LOGGER.error("Cancelling subscription as publishing a message failed", cause);
+            finish(cause);
+        }
+    }
+}
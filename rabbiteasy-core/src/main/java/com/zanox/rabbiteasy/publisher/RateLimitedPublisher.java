@@ -0,0 +1,165 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.zanox.rabbiteasy.Message;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * <p>A rate limited publisher limits the amount of messages and bytes
+ * another publisher sends per second, e.g. to keep bulk jobs from
+ * flooding the broker.</p>
+ *
+ * <p>The blocking publish methods wait until the rate allows publishing.
+ * The try publish methods publish only if the rate allows publishing
+ * immediately. The rate limit itself is thread safe, the publisher is
+ * shared by threads only if the underlying publisher is.</p>
+ */
+public class RateLimitedPublisher implements MessagePublisher {
+
+    private final MessagePublisher publisher;
+    private final TokenBucket messageBucket;
+    private final TokenBucket byteBucket;
+
+    /**
+     * Limits the rate with bursts of up to one second.
+     *
+     * @param publisher The publisher to limit
+     * @param messagesPerSecond The maximum messages per second or 0 for no limit
+     * @param bytesPerSecond The maximum body bytes per second or 0 for no limit
+     */
+    public RateLimitedPublisher(MessagePublisher publisher, double messagesPerSecond, long bytesPerSecond) {
+        this(publisher,
+                messagesPerSecond > 0 ? new TokenBucket(messagesPerSecond, Math.max(1, (long) messagesPerSecond)) : null,
+                bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, bytesPerSecond) : null);
+    }
+
+    /**
+     * @param publisher The publisher to limit
+     * @param messageBucket The bucket holding one token per message, may be null
+     * @param byteBucket The bucket holding one token per body byte, may be null
+     */
+    public RateLimitedPublisher(MessagePublisher publisher, TokenBucket messageBucket, TokenBucket byteBucket) {
+        this.publisher = publisher;
+        this.messageBucket = messageBucket;
+        this.byteBucket = byteBucket;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(Message message) throws IOException {
+        publish(message, DeliveryOptions.NONE);
+    }
+
+    /**
+     * Waits until the rate allows publishing and publishes the message.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(Message message, DeliveryOptions deliveryOptions) throws IOException {
+        acquire(1, message.getBodyContent().length);
+        publisher.publish(message, deliveryOptions);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(List<Message> messages) throws IOException {
+        publish(messages, DeliveryOptions.NONE);
+    }
+
+    /**
+     * Waits until the rate allows publishing all messages and publishes them.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(List<Message> messages, DeliveryOptions deliveryOptions) throws IOException {
+        acquire(messages.size(), bodySize(messages));
+        publisher.publish(messages, deliveryOptions);
+    }
+
+    /**
+     * Publishes the message only if the rate allows publishing immediately.
+     *
+     * @param message The message to publish
+     * @param deliveryOptions The delivery options
+     * @return True if the message was published, false if the rate was exceeded
+     * @throws IOException if publishing failed
+     */
+    public boolean tryPublish(Message message, DeliveryOptions deliveryOptions) throws IOException {
+        if (! tryAcquire(1, message.getBodyContent().length)) {
+            return false;
+        }
+        publisher.publish(message, deliveryOptions);
+        return true;
+    }
+
+    /**
+     * Publishes the messages only if the rate allows publishing all of them immediately.
+     *
+     * @param messages The messages to publish
+     * @param deliveryOptions The delivery options
+     * @return True if the messages were published, false if the rate was exceeded
+     * @throws IOException if publishing failed
+     */
+    public boolean tryPublish(List<Message> messages, DeliveryOptions deliveryOptions) throws IOException {
+        if (! tryAcquire(messages.size(), bodySize(messages))) {
+            return false;
+        }
+        publisher.publish(messages, deliveryOptions);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        publisher.close();
+    }
+
+    private void acquire(int messages, long bytes) throws IOException {
+        boolean messagesAcquired = false;
+        try {
+            if (messageBucket != null) {
+                messageBucket.acquire(messages);
+                messagesAcquired = true;
+            }
+            if (byteBucket != null) {
+                byteBucket.acquire(bytes);
+            }
+        } catch (InterruptedException e) {
+            if (messagesAcquired) {
+                messageBucket.release(messages);
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the publish rate limit");
+        }
+    }
+
+    private boolean tryAcquire(int messages, long bytes) {
+        if (messageBucket != null && ! messageBucket.tryAcquire(messages)) {
+            return false;
+        }
+        if (byteBucket != null && ! byteBucket.tryAcquire(bytes)) {
+            if (messageBucket != null) {
+                messageBucket.release(messages);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private static long bodySize(List<Message> messages) {
+        long size = 0;
+        for (Message message : messages) {
+            size += message.getBodyContent().length;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,135 @@
+package com.zanox.rabbiteasy.publisher;
+
+/**
+ * <p>A retry policy decides whether and when publishing a message is
+ * attempted again after it failed.</p>
+ *
+ * <p>The interval between attempts either stays fixed or grows
+ * exponentially up to a maximum interval. Intervals may be varied by
+ * a random jitter, so publishers failing at the same time do not retry
+ * at the same time. Retrying stops as soon as the maximum amount of
+ * attempts is used or the maximum elapsed time since the first attempt
+ * is exceeded.</p>
+ *
+ * <p>Retry policies are immutable. Modifying a policy returns a new
+ * policy.</p>
+ */
+public class RetryPolicy {
+
+    /**
+     * The default policy attempting to publish three
+     * times with a fixed interval of one second.
+     */
+    public static final RetryPolicy DEFAULT = fixed(
+            DiscretePublisher.DEFAULT_RETRY_ATTEMPTS, DiscretePublisher.DEFAULT_RETRY_INTERVAL);
+
+    /**
+     * A policy attempting to publish only once.
+     */
+    public static final RetryPolicy NO_RETRY = fixed(1, 0);
+
+    private final int maxAttempts;
+    private final long initialInterval;
+    private final double multiplier;
+    private final long maxInterval;
+    private final double jitter;
+    private final long maxElapsedTime;
+
+    private RetryPolicy(int maxAttempts, long initialInterval, double multiplier, long maxInterval,
+                        double jitter, long maxElapsedTime) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("At least one attempt is required");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialInterval = initialInterval;
+        this.multiplier = multiplier;
+        this.maxInterval = maxInterval;
+        this.jitter = jitter;
+        this.maxElapsedTime = maxElapsedTime;
+    }
+
+    /**
+     * Creates a policy retrying with a fixed interval.
+     *
+     * @param maxAttempts The maximum amount of attempts including the first one
+     * @param interval The interval between attempts in milliseconds
+     * @return The retry policy
+     */
+    public static RetryPolicy fixed(int maxAttempts, long interval) {
+        return new RetryPolicy(maxAttempts, interval, 1, interval, 0, 0);
+    }
+
+    /**
+     * Creates a policy retrying with an exponentially growing interval.
+     *
+     * @param maxAttempts The maximum amount of attempts including the first one
+     * @param initialInterval The interval before the second attempt in milliseconds
+     * @param multiplier The factor the interval grows by with every attempt
+     * @param maxInterval The maximum interval in milliseconds
+     * @return The retry policy
+     */
+    public static RetryPolicy exponential(int maxAttempts, long initialInterval, double multiplier, long maxInterval) {
+        return new RetryPolicy(maxAttempts, initialInterval, multiplier, maxInterval, 0, 0);
+    }
+
+    /**
+     * Varies every interval randomly by up to the given fraction
+     * of the interval, e.g. by up to 20% for a jitter of 0.2.
+     *
+     * @param jitter The jitter between 0 and 1
+     * @return The new retry policy
+     */
+    public RetryPolicy withJitter(double jitter) {
+        return new RetryPolicy(maxAttempts, initialInterval, multiplier, maxInterval, jitter, maxElapsedTime);
+    }
+
+    /**
+     * Stops retrying once the given time elapsed since the first attempt.
+     *
+     * @param maxElapsedTime The maximum elapsed time in milliseconds or 0 for no limit
+     * @return The new retry policy
+     */
+    public RetryPolicy withMaxElapsedTime(long maxElapsedTime) {
+        return new RetryPolicy(maxAttempts, initialInterval, multiplier, maxInterval, jitter, maxElapsedTime);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getMaxElapsedTime() {
+        return maxElapsedTime;
+    }
+
+    /**
+     * Checks if another attempt is to be made after the given attempt failed.
+     *
+     * @param attempt The failed attempt, starting with 1
+     * @param elapsedTime The time in milliseconds elapsed since the first attempt
+     * @return True if publishing is to be attempted again
+     */
+    public boolean shouldRetry(int attempt, long elapsedTime) {
+        if (attempt >= maxAttempts) {
+            return false;
+        }
+        return maxElapsedTime <= 0 || elapsedTime < maxElapsedTime;
+    }
+
+    /**
+     * Gets the interval to wait after the given attempt failed.
+     *
+     * @param attempt The failed attempt, starting with 1
+     * @return The interval in milliseconds
+     */
+    public long getInterval(int attempt) {
+        double interval = initialInterval * Math.pow(multiplier, attempt - 1);
+        interval = Math.min(interval, maxInterval);
+        if (jitter > 0) {
+            interval += interval * jitter * (2 * Math.random() - 1);
+        }
+        return Math.max(0, Math.round(interval));
+    }
+}
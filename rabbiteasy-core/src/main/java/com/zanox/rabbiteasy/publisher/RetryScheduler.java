@@ -0,0 +1,41 @@
+package com.zanox.rabbiteasy.publisher;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides the executor shared by all publishers to run retry
+ * attempts without blocking the publishing thread.
+ */
+public final class RetryScheduler {
+
+    private RetryScheduler() {
+    }
+
+    /**
+     * Gets the shared retry executor. Its threads are daemon
+     * threads, so the executor needs not to be shut down.
+     *
+     * @return The shared executor
+     */
+    public static ScheduledExecutorService getSharedExecutor() {
+        return SharedExecutorHolder.EXECUTOR;
+    }
+
+    private static class SharedExecutorHolder {
+
+        private static final ScheduledExecutorService EXECUTOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rabbiteasy-retry-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
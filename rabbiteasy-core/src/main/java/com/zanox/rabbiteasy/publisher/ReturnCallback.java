@@ -0,0 +1,23 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.zanox.rabbiteasy.Message;
+
+/**
+ * <p>A return callback is notified when the broker returned a message
+ * published as mandatory or immediate because it could not be routed
+ * to a queue or delivered to a consumer.</p>
+ *
+ * <p>Callbacks are invoked on the connection's thread receiving the
+ * returned message and must therefore not block.</p>
+ */
+public interface ReturnCallback {
+
+    /**
+     * Invoked when the broker returned a message.
+     *
+     * @param message The originally published message
+     * @param replyCode The reply code given by the broker (e.g. 312 for no route)
+     * @param replyText The reply text given by the broker
+     */
+    void onReturned(Message message, int replyCode, String replyText);
+}
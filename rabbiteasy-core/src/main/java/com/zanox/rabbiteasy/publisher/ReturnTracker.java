@@ -0,0 +1,141 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ReturnListener;
+import com.zanox.rabbiteasy.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Correlates messages returned by the broker with the originally
+ * published messages by a publish id written to a message header.</p>
+ *
+ * <p>The amount of tracked messages is bounded: When the bound is
+ * reached, the oldest messages are not tracked any more. Messages
+ * confirmed by the broker are untracked right away, as the broker
+ * returns a message before confirming it.</p>
+ */
+class ReturnTracker implements ReturnListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReturnTracker.class);
+
+    private final String idPrefix = UUID.randomUUID().toString() + ":";
+    private final AtomicLong idCounter = new AtomicLong();
+    private final int maxTrackedMessages;
+
+    private final Map<String, TrackedMessage> trackedMessages = new ConcurrentHashMap<String, TrackedMessage>();
+    private final Queue<String> trackedIds = new ConcurrentLinkedQueue<String>();
+    private final AtomicInteger trackedIdCount = new AtomicInteger();
+    private final Set<Channel> attachedChannels =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Channel, Boolean>()));
+
+    private volatile ReturnCallback callback;
+
+    ReturnTracker(int maxTrackedMessages) {
+        this.maxTrackedMessages = maxTrackedMessages;
+    }
+
+    void setCallback(ReturnCallback callback) {
+        this.callback = callback;
+    }
+
+    ReturnCallback getCallback() {
+        return callback;
+    }
+
+    /**
+     * Registers the tracker as return listener on the given channel once.
+     *
+     * @param channel The channel messages are published on
+     */
+    void attach(Channel channel) {
+        if (attachedChannels.add(channel)) {
+            channel.addReturnListener(this);
+        }
+    }
+
+    /**
+     * Tracks a message about to be published by writing a new
+     * publish id to its headers.
+     *
+     * @param message The message to track
+     * @param future The future to fail if the message is returned, may be null
+     * @return The publish id
+     */
+    String track(Message message, PublishFuture future) {
+        String publishId = idPrefix + idCounter.incrementAndGet();
+        message.header(DiscretePublisher.PUBLISH_ID_HEADER, publishId);
+        trackedMessages.put(publishId, new TrackedMessage(message, future));
+        trackedIds.offer(publishId);
+        if (trackedIdCount.incrementAndGet() > maxTrackedMessages) {
+            String oldestId = trackedIds.poll();
+            if (oldestId != null) {
+                trackedMessages.remove(oldestId);
+                trackedIdCount.decrementAndGet();
+            }
+        }
+        return publishId;
+    }
+
+    /**
+     * Stops tracking a message, e.g. after it was confirmed.
+     *
+     * @param publishId The publish id
+     */
+    void untrack(String publishId) {
+        trackedMessages.remove(publishId);
+    }
+
+    int getTrackedMessages() {
+        return trackedMessages.size();
+    }
+
+    @Override
+    public void handleReturn(int replyCode, String replyText, String exchange, String routingKey,
+                             BasicProperties properties, byte[] body) {
+        Map<String, Object> headers = properties.getHeaders();
+        Object publishId = headers == null ? null : headers.get(DiscretePublisher.PUBLISH_ID_HEADER);
+        TrackedMessage trackedMessage = publishId == null ? null : trackedMessages.remove(publishId.toString());
+        if (trackedMessage == null) {
+            LOGGER.warn("Untracked message to exchange '{}' with routing key '{}' returned by broker: {} {}",
+                    new Object[] { exchange, routingKey, replyCode, replyText });
+            return;
+        }
+        LOGGER.warn("Message to exchange '{}' with routing key '{}' returned by broker: {} {}",
+                new Object[] { exchange, routingKey, replyCode, replyText });
+        if (trackedMessage.future != null) {
+            trackedMessage.future.fail(new MessageReturnedException(replyCode, replyText, exchange, routingKey));
+        }
+        ReturnCallback currentCallback = callback;
+        if (currentCallback != null) {
+            try {
+                currentCallback.onReturned(trackedMessage.message, replyCode, replyText);
+            } catch (RuntimeException e) {
+                LOGGER.error("Return callback failed", e);
+            }
+        }
+    }
+
+    private static class TrackedMessage {
+
+        private final Message message;
+        private final PublishFuture future;
+
+        private TrackedMessage(Message message, PublishFuture future) {
+            this.message = message;
+            this.future = future;
+        }
+    }
+}
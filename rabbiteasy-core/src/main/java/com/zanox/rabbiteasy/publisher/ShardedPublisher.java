@@ -0,0 +1,195 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.rabbitmq.client.ConnectionFactory;
+import com.zanox.rabbiteasy.Message;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>A sharded publisher publishes messages on several channels in
+ * parallel. Every message is assigned to one channel by hashing its
+ * shard key, so messages with the same key are always published on the
+ * same channel and keep their order.</p>
+ *
+ * <p>The shard key is the value of the configured shard key header if
+ * the message has this header, otherwise the message's routing key.</p>
+ *
+ * <p>Channels are opened with the given connection factories in turn,
+ * so the channels may be spread over several connections. Sharded
+ * publishers are thread safe: Threads publishing on different channels
+ * publish in parallel, while threads publishing on the same channel
+ * wait for each other.</p>
+ */
+public class ShardedPublisher implements MessagePublisher {
+
+    private final MessagePublisher[] shards;
+    private final Lock[] shardLocks;
+    private volatile String shardKeyHeader;
+
+    /**
+     * @param connectionFactory The connection factory
+     * @param reliability The reliability level messages are published with
+     * @param shardCount The amount of channels
+     */
+    public ShardedPublisher(ConnectionFactory connectionFactory, PublisherReliability reliability, int shardCount) {
+        this(Collections.singletonList(connectionFactory), reliability, shardCount);
+    }
+
+    /**
+     * @param connectionFactories The connection factories used in turn to open channels
+     * @param reliability The reliability level messages are published with
+     * @param shardCount The amount of channels
+     */
+    public ShardedPublisher(List<? extends ConnectionFactory> connectionFactories, PublisherReliability reliability,
+                            int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        if (connectionFactories.isEmpty()) {
+            throw new IllegalArgumentException("At least one connection factory is required");
+        }
+        shards = new MessagePublisher[shardCount];
+        shardLocks = new Lock[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new GenericPublisher(connectionFactories.get(i % connectionFactories.size()), reliability);
+            shardLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Sets the header holding the shard key of a message. Messages
+     * without this header are sharded by their routing key.
+     *
+     * @param shardKeyHeader The name of the shard key header
+     */
+    public void setShardKeyHeader(String shardKeyHeader) {
+        this.shardKeyHeader = shardKeyHeader;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(Message message) throws IOException {
+        publish(message, DeliveryOptions.NONE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(Message message, DeliveryOptions deliveryOptions) throws IOException {
+        publish(shardKey(message), message, deliveryOptions);
+    }
+
+    /**
+     * Publishes a message on the channel assigned to the given shard key.
+     *
+     * @param shardKey The shard key
+     * @param message The message to publish
+     * @param deliveryOptions The delivery options
+     * @throws IOException if publishing the message failed
+     */
+    public void publish(Object shardKey, Message message, DeliveryOptions deliveryOptions) throws IOException {
+        int index = shardIndex(shardKey);
+        shardLocks[index].lock();
+        try {
+            shards[index].publish(message, deliveryOptions);
+        } finally {
+            shardLocks[index].unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(List<Message> messages) throws IOException {
+        publish(messages, DeliveryOptions.NONE);
+    }
+
+    /**
+     * Publishes the messages of every shard together, keeping the
+     * order of messages within every shard.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void publish(List<Message> messages, DeliveryOptions deliveryOptions) throws IOException {
+        List<List<Message>> shardMessages = new ArrayList<List<Message>>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            shardMessages.add(null);
+        }
+        for (Message message : messages) {
+            int index = shardIndex(shardKey(message));
+            if (shardMessages.get(index) == null) {
+                shardMessages.set(index, new ArrayList<Message>());
+            }
+            shardMessages.get(index).add(message);
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (shardMessages.get(i) == null) {
+                continue;
+            }
+            shardLocks[i].lock();
+            try {
+                shards[i].publish(shardMessages.get(i), deliveryOptions);
+            } finally {
+                shardLocks[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * Closes the channels of all shards.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (int i = 0; i < shards.length; i++) {
+            shardLocks[i].lock();
+            try {
+                shards[i].close();
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                shardLocks[i].unlock();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    Object shardKey(Message message) {
+        String header = shardKeyHeader;
+        if (header != null) {
+            Object shardKey = message.getHeader(header);
+            if (shardKey != null) {
+                return shardKey.toString();
+            }
+        }
+        return message.getRoutingKey();
+    }
+
+    int shardIndex(Object shardKey) {
+        if (shardKey == null) {
+            return 0;
+        }
+        // Spread the hash, as keys often differ in their last characters only
+        int hash = shardKey.hashCode();
+        hash ^= (hash >>> 16);
+        return (hash & Integer.MAX_VALUE) % shards.length;
+    }
+}
@@ -2,6 +2,7 @@ package com.zanox.rabbiteasy.publisher;
 
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.ConnectionFactory;
+import com.zanox.rabbiteasy.ChannelPool;
 import com.zanox.rabbiteasy.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,22 +28,32 @@ public class SimplePublisher extends DiscretePublisher {
         super(connectionFactory);
     }
 
+    public SimplePublisher(ChannelPool channelPool) {
+        super(channelPool);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void publish(Message message, DeliveryOptions deliveryOptions) throws IOException {
-        for (int attempt = 1; attempt <= DEFAULT_RETRY_ATTEMPTS; attempt++) {
+        applyBackpressure();
+        long firstAttemptTime = System.currentTimeMillis();
+        for (int attempt = 1; attempt <= getRetryPolicy().getMaxAttempts(); attempt++) {
             if (attempt > 1) {
                 LOGGER.info("Attempt {} to send message", attempt);
             }
 
+            Channel channel = null;
             try {
-                Channel channel = provideChannel();
-                message.publish(channel, deliveryOptions);
+                channel = provideChannel();
+                trackReturn(channel, message, deliveryOptions, null);
+                message.publish(channel, deliveryOptions, getLogPolicy());
+                releaseChannel(channel);
                 return;
             } catch (IOException e) {
-                handleIoException(attempt, e);
+                discardChannel(channel);
+                handleIoException(attempt, firstAttemptTime, e);
             }
         }
     }
@@ -0,0 +1,113 @@
+package com.zanox.rabbiteasy.publisher;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A token bucket limits the rate of operations. Tokens are refilled
+ * continuously at a fixed rate up to the capacity of the bucket, which
+ * allows short bursts while keeping the average rate.</p>
+ *
+ * <p>The bucket is lock free: Its whole state is the point in time at
+ * which the bucket will be full again, updated by compare and set.
+ * Acquiring tokens moves this point into the future.</p>
+ */
+public class TokenBucket {
+
+    private final double nanosPerToken;
+    private final long capacityNanos;
+    private final AtomicLong fullTime;
+
+    /**
+     * Creates a bucket which is full initially.
+     *
+     * @param tokensPerSecond The rate at which tokens are refilled
+     * @param capacity The maximum amount of tokens in the bucket
+     */
+    public TokenBucket(double tokensPerSecond, long capacity) {
+        if (tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("Token rate must be positive");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least one token");
+        }
+        this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / tokensPerSecond;
+        this.capacityNanos = (long) (capacity * nanosPerToken);
+        this.fullTime = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Acquires tokens if they are available without waiting. More tokens
+     * than the capacity can only be acquired from a full bucket.
+     *
+     * @param tokens The amount of tokens to acquire
+     * @return True if the tokens were acquired
+     */
+    public boolean tryAcquire(long tokens) {
+        long cost = cost(tokens);
+        while (true) {
+            long now = System.nanoTime();
+            long currentFullTime = fullTime.get();
+            long base = Math.max(currentFullTime, now);
+            if (base - now + cost > capacityNanos && currentFullTime > now) {
+                return false;
+            }
+            if (fullTime.compareAndSet(currentFullTime, base + cost)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Acquires tokens and waits until they are available. Tokens are
+     * reserved immediately, so waiting threads are served in order.
+     *
+     * @param tokens The amount of tokens to acquire
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(long tokens) throws InterruptedException {
+        long cost = cost(tokens);
+        long now;
+        long newFullTime;
+        while (true) {
+            now = System.nanoTime();
+            long currentFullTime = fullTime.get();
+            newFullTime = Math.max(currentFullTime, now) + cost;
+            if (fullTime.compareAndSet(currentFullTime, newFullTime)) {
+                break;
+            }
+        }
+        long waitTime = newFullTime - now - Math.max(capacityNanos, cost);
+        if (waitTime > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitTime);
+            } catch (InterruptedException e) {
+                release(tokens);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns tokens which were acquired but not used.
+     *
+     * @param tokens The amount of tokens to return
+     */
+    void release(long tokens) {
+        fullTime.addAndGet(- cost(tokens));
+    }
+
+    /**
+     * Gets the amount of tokens currently available.
+     *
+     * @return The available tokens
+     */
+    public long getAvailableTokens() {
+        long usedNanos = Math.max(0, fullTime.get() - System.nanoTime());
+        return (long) (Math.max(0, capacityNanos - usedNanos) / nanosPerToken);
+    }
+
+    private long cost(long tokens) {
+        return (long) (tokens * nanosPerToken);
+    }
+}
@@ -2,18 +2,32 @@ package com.zanox.rabbiteasy.publisher;
 
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.ConnectionFactory;
+import com.zanox.rabbiteasy.ChannelMode;
+import com.zanox.rabbiteasy.ChannelPool;
+import com.zanox.rabbiteasy.LogPolicy;
 import com.zanox.rabbiteasy.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>A transactional publisher sends messages to a broker
  * within a transaction scope. A message is only put into
  * its destination queues when the transaction is committed</p>
+ *
+ * <p>In group commit mode, messages published concurrently by
+ * several threads are gathered and committed within one shared
+ * transaction. Every thread returns as soon as the shared transaction
+ * was committed, or fails if it was rolled back. A publisher in group
+ * commit mode is thread safe.</p>
  * 
  * @author christian.bick
  * @author uwe.janner
@@ -24,10 +38,22 @@ public class TransactionalPublisher extends DiscretePublisher {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TransactionalPublisher.class);
 
+    public static final int DEFAULT_MAX_GROUP_SIZE = 1000;
+
+    private final Queue<PendingPublish> pendingPublishes = new ConcurrentLinkedQueue<PendingPublish>();
+    private final Lock commitLock = new ReentrantLock();
+
+    private volatile boolean groupCommit = false;
+    private volatile int maxGroupSize = DEFAULT_MAX_GROUP_SIZE;
+
     public TransactionalPublisher(ConnectionFactory connectionFactory) {
         super(connectionFactory);
     }
 
+    public TransactionalPublisher(ChannelPool channelPool) {
+        super(channelPool);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -41,25 +67,120 @@ public class TransactionalPublisher extends DiscretePublisher {
      */
     @Override
     public void publish(List<Message> messages, DeliveryOptions deliveryOptions) throws IOException {
-        for (int attempt = 1; attempt <= DEFAULT_RETRY_ATTEMPTS; attempt++) {
+        PendingPublish pendingPublish = new PendingPublish(messages, deliveryOptions);
+        if (! groupCommit) {
+            publishInTransaction(Collections.singletonList(pendingPublish));
+            return;
+        }
+        pendingPublishes.offer(pendingPublish);
+        // The first thread entering commits the messages of all threads waiting meanwhile
+        commitLock.lock();
+        try {
+            while (! pendingPublish.done) {
+                commitGroup();
+            }
+        } finally {
+            commitLock.unlock();
+        }
+        if (pendingPublish.failure != null) {
+            throw new IOException("Shared transaction was rolled back", pendingPublish.failure);
+        }
+    }
+
+    /**
+     * Enables or disables group commit mode. In group commit mode,
+     * messages published concurrently are committed within one
+     * shared transaction.
+     *
+     * @param groupCommit True to enable group commit mode
+     */
+    public void setGroupCommit(boolean groupCommit) {
+        this.groupCommit = groupCommit;
+    }
+
+    public boolean isGroupCommit() {
+        return groupCommit;
+    }
+
+    /**
+     * Sets the amount of messages after which no further publishes
+     * are added to a shared transaction.
+     *
+     * @param maxGroupSize The maximum amount of messages per shared transaction
+     */
+    public void setMaxGroupSize(int maxGroupSize) {
+        if (maxGroupSize < 1) {
+            throw new IllegalArgumentException("Groups must contain at least one message");
+        }
+        this.maxGroupSize = maxGroupSize;
+    }
+
+    /**
+     * Publishes the pending publishes of all threads within one
+     * transaction and tells every thread about the outcome.
+     */
+    private void commitGroup() {
+        List<PendingPublish> group = new ArrayList<PendingPublish>();
+        int groupSize = 0;
+        PendingPublish pendingPublish;
+        while (groupSize < maxGroupSize && (pendingPublish = pendingPublishes.poll()) != null) {
+            group.add(pendingPublish);
+            groupSize += pendingPublish.messages.size();
+        }
+        if (group.isEmpty()) {
+            return;
+        }
+        LOGGER.debug("Committing {} messages of {} publishes within one transaction", groupSize, group.size());
+        Throwable failure = null;
+        try {
+            publishInTransaction(group);
+        } catch (Exception e) {
+            failure = e;
+        } catch (Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            // The group was taken from the queue, so its publishes must be done even if an error escapes
+            for (PendingPublish groupedPublish : group) {
+                groupedPublish.failure = failure;
+                groupedPublish.done = true;
+            }
+        }
+    }
+
+    private void publishInTransaction(List<PendingPublish> publishes) throws IOException {
+        applyBackpressure();
+        long firstAttemptTime = System.currentTimeMillis();
+        for (int attempt = 1; attempt <= getRetryPolicy().getMaxAttempts(); attempt++) {
             if (attempt > 1) {
                 LOGGER.info("Attempt {} to send messages within transaction", attempt);
             }
 
+            Channel channel = null;
             try {
-                Channel channel = provideChannel();
+                channel = provideChannel();
                 try {
-                    for (Message message : messages) {
-                        message.publish(channel, deliveryOptions);
+                    LogPolicy logPolicy = getLogPolicy();
+                    // The transaction is logged if any of its messages is logged
+                    boolean transactionLogged = false;
+                    for (PendingPublish pendingPublish : publishes) {
+                        for (Message message : pendingPublish.messages) {
+                            trackReturn(channel, message, pendingPublish.deliveryOptions, null);
+                            boolean logged = logPolicy.isInfoEnabled(LOGGER);
+                            transactionLogged |= logged;
+                            message.publish(channel, pendingPublish.deliveryOptions, logged);
+                        }
                     }
-                    commitTransaction(channel);
+                    commitTransaction(channel, transactionLogged);
                 } catch (IOException e) {
                     rollbackTransaction(channel);
                     throw e;
                 }
+                releaseChannel(channel);
                 return;
             } catch (IOException e) {
-                handleIoException(attempt, e);
+                discardChannel(channel);
+                handleIoException(attempt, firstAttemptTime, e);
             }
         }
     }
@@ -67,15 +188,26 @@ public class TransactionalPublisher extends DiscretePublisher {
     @Override
     protected Channel provideChannel() throws IOException {
         Channel channel = super.provideChannel();
-        channel.txSelect();
+        if (! isPooled()) {
+            channel.txSelect();
+        }
         return  channel;
     }
 
-    static void commitTransaction(Channel channel) throws IOException {
+    @Override
+    protected ChannelMode getChannelMode() {
+        return ChannelMode.TRANSACTIONAL;
+    }
+
+    static void commitTransaction(Channel channel, boolean logged) throws IOException {
         try {
-            LOGGER.info("Committing transaction");
+            if (logged) {
+                LOGGER.info("Committing transaction");
+            }
             channel.txCommit();
-            LOGGER.info("Transaction committed");
+            if (logged) {
+                LOGGER.info("Transaction committed");
+            }
         } catch (IOException e) {
             LOGGER.error("Failed to commit transaction", e);
             throw e;
@@ -92,4 +224,21 @@ public class TransactionalPublisher extends DiscretePublisher {
             throw e;
         }
     }
+
+    /**
+     * Messages published by one call, waiting to be committed.
+     * Only accessed while holding the commit lock once queued.
+     */
+    private static class PendingPublish {
+
+        private final List<Message> messages;
+        private final DeliveryOptions deliveryOptions;
+        private boolean done;
+        private Throwable failure;
+
+        private PendingPublish(List<Message> messages, DeliveryOptions deliveryOptions) {
+            this.messages = messages;
+            this.deliveryOptions = deliveryOptions;
+        }
+    }
 }
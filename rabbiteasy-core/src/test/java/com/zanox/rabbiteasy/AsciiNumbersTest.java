@@ -0,0 +1,55 @@
+package com.zanox.rabbiteasy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AsciiNumbersTest {
+
+    @Test
+    public void shouldFormatLikeString() {
+        long[] values = { 0, 7, -7, 10, 99, 100, -12345, 1234567890123L,
+                999999999999999999L, 1000000000000000000L, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (long value : values) {
+            Assert.assertEquals(String.valueOf(value), new String(AsciiNumbers.format(value)));
+        }
+    }
+
+    @Test
+    public void shouldParseLikeLong() {
+        String[] values = { "0", "42", "-42", "+42", "9223372036854775807", "-9223372036854775808" };
+        for (String value : values) {
+            byte[] bytes = value.getBytes();
+            Assert.assertEquals(Long.parseLong(value), AsciiNumbers.parseLong(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test
+    public void shouldParseRange() {
+        byte[] bytes = "id=1234;".getBytes();
+        Assert.assertEquals(1234, AsciiNumbers.parseInt(bytes, 3, 4));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void shouldRejectLongOverflow() {
+        byte[] bytes = "9223372036854775808".getBytes();
+        AsciiNumbers.parseLong(bytes, 0, bytes.length);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void shouldRejectIntOverflow() {
+        byte[] bytes = "2147483648".getBytes();
+        AsciiNumbers.parseInt(bytes, 0, bytes.length);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void shouldRejectNonDigits() {
+        byte[] bytes = "12a".getBytes();
+        AsciiNumbers.parseLong(bytes, 0, bytes.length);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void shouldRejectSignOnly() {
+        byte[] bytes = "-".getBytes();
+        AsciiNumbers.parseLong(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,93 @@
+package com.zanox.rabbiteasy;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.easymock.EasyMock.expect;
+
+public class ChannelPoolTest {
+
+    ConnectionFactory connectionFactory;
+    Connection connection;
+
+    @Before
+    public void before() throws IOException {
+        connectionFactory = EasyMock.createMock(ConnectionFactory.class);
+        connection = EasyMock.createMock(Connection.class);
+        expect(connectionFactory.newConnection()).andReturn(connection).anyTimes();
+    }
+
+    @Test
+    public void shouldReuseReturnedChannel() throws IOException {
+        Channel channel = openChannelMock();
+        expect(channel.confirmSelect()).andReturn(null).once();
+        EasyMock.replay(connectionFactory, connection, channel);
+
+        ChannelPool channelPool = new ChannelPool(connectionFactory, 2, 60000, 10);
+        Channel borrowedChannel = channelPool.borrowChannel(ChannelMode.CONFIRM);
+        channelPool.returnChannel(borrowedChannel);
+        Assert.assertSame(borrowedChannel, channelPool.borrowChannel(ChannelMode.CONFIRM));
+        Assert.assertEquals(1, channelPool.getOpenChannels(ChannelMode.CONFIRM));
+        Assert.assertEquals(0, channelPool.getOpenChannels(ChannelMode.PLAIN));
+
+        EasyMock.verify(connectionFactory, connection, channel);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldBoundOpenChannels() throws IOException {
+        Channel channel = openChannelMock();
+        EasyMock.replay(connectionFactory, connection, channel);
+
+        ChannelPool channelPool = new ChannelPool(connectionFactory, 1, 60000, 10);
+        channelPool.borrowChannel(ChannelMode.PLAIN);
+        channelPool.borrowChannel(ChannelMode.PLAIN);
+    }
+
+    @Test
+    public void shouldEvictIdleChannels() throws Exception {
+        Channel channel = openChannelMock();
+        channel.close();
+        EasyMock.expectLastCall().once();
+        EasyMock.replay(connectionFactory, connection, channel);
+
+        ChannelPool channelPool = new ChannelPool(connectionFactory, 1, 0, 10);
+        channelPool.returnChannel(channelPool.borrowChannel(ChannelMode.PLAIN));
+        Thread.sleep(2);
+        channelPool.evictIdleChannels();
+        Assert.assertEquals(0, channelPool.getIdleChannels(ChannelMode.PLAIN));
+        Assert.assertEquals(0, channelPool.getOpenChannels(ChannelMode.PLAIN));
+
+        EasyMock.verify(channel);
+    }
+
+    @Test
+    public void shouldFreeInvalidatedChannels() throws IOException {
+        Channel channel = openChannelMock();
+        expect(channel.txSelect()).andReturn(null).times(2);
+        channel.close();
+        EasyMock.expectLastCall().once();
+        expect(connection.createChannel()).andReturn(channel);
+        EasyMock.replay(connectionFactory, connection, channel);
+
+        ChannelPool channelPool = new ChannelPool(connectionFactory, 1, 60000, 10);
+        channelPool.invalidateChannel(channelPool.borrowChannel(ChannelMode.TRANSACTIONAL));
+        Assert.assertEquals(0, channelPool.getOpenChannels(ChannelMode.TRANSACTIONAL));
+        channelPool.borrowChannel(ChannelMode.TRANSACTIONAL);
+
+        EasyMock.verify(connection, channel);
+    }
+
+    private Channel openChannelMock() throws IOException {
+        Channel channel = EasyMock.createMock(Channel.class);
+        expect(connection.createChannel()).andReturn(channel);
+        expect(channel.isOpen()).andReturn(true).anyTimes();
+        return channel;
+    }
+}
@@ -0,0 +1,32 @@
+package com.zanox.rabbiteasy;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class JsonCodecRegistryTest {
+
+    @Test
+    public void shouldCacheReaderPerType() {
+        Assert.assertSame(JsonCodecRegistry.readerFor(TestDTO.class), JsonCodecRegistry.readerFor(TestDTO.class));
+        Assert.assertNotSame(JsonCodecRegistry.readerFor(TestDTO.class), JsonCodecRegistry.readerFor(String.class));
+    }
+
+    @Test
+    public void shouldCacheWriterPerType() {
+        Assert.assertSame(JsonCodecRegistry.writerFor(TestDTO.class), JsonCodecRegistry.writerFor(TestDTO.class));
+        Assert.assertNotSame(JsonCodecRegistry.writerFor(TestDTO.class), JsonCodecRegistry.writerFor(String.class));
+    }
+
+    @Test
+    public void shouldWriteObjectAsJson() {
+        TestDTO testDTO = new TestDTO();
+        testDTO.setId(7L);
+        testDTO.setName("seven");
+        Message message = new Message().body(testDTO);
+
+        Assert.assertEquals(Message.APPLICATION_JSON, message.getBasicProperties().getContentType());
+        Assert.assertEquals("{\"id\":7,\"name\":\"seven\"}", message.getBodyAs(String.class));
+        Assert.assertEquals(testDTO.doBla(), message.getBodyAs(TestDTO.class).doBla());
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.zanox.rabbiteasy;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+public class LogPolicyTest {
+
+    @Test
+    public void shouldLogEveryNthMessage() {
+        Logger logger = infoLogger(true);
+        LogPolicy logPolicy = LogPolicy.sampled(3);
+        int logged = 0;
+        for (int i = 0; i < 9; i++) {
+            if (logPolicy.isInfoEnabled(logger)) {
+                logged++;
+            }
+        }
+        Assert.assertEquals(3, logged);
+    }
+
+    @Test
+    public void shouldLogNothingIfOffOrDisabled() {
+        Assert.assertFalse(LogPolicy.OFF.isInfoEnabled(infoLogger(true)));
+        Assert.assertFalse(LogPolicy.FULL.isInfoEnabled(infoLogger(false)));
+        Assert.assertTrue(LogPolicy.FULL.isInfoEnabled(infoLogger(true)));
+        Assert.assertSame(LogPolicy.FULL, LogPolicy.sampled(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectInvalidSampleRate() {
+        LogPolicy.sampled(0);
+    }
+
+    private static Logger infoLogger(boolean infoEnabled) {
+        Logger logger = createMock(Logger.class);
+        expect(logger.isInfoEnabled()).andReturn(infoEnabled).anyTimes();
+        replay(logger);
+        return logger;
+    }
+}
@@ -0,0 +1,74 @@
+package com.zanox.rabbiteasy;
+
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.MessageProperties;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessagePoolTest {
+
+    private static final Envelope ENVELOPE = new Envelope(1L, false, "exchange", "routingKey");
+
+    @Test
+    public void shouldReuseReleasedMessages() {
+        MessagePool pool = new MessagePool(1, false);
+        Message message = pool.acquire(ENVELOPE, MessageProperties.TEXT_PLAIN, "one".getBytes());
+        Assert.assertEquals("one", message.getBodyAs(String.class));
+        message.release();
+        Assert.assertEquals(1, pool.getAvailableMessages());
+
+        Envelope envelope = new Envelope(2L, false, "other", "key");
+        Message reusedMessage = pool.acquire(envelope, MessageProperties.TEXT_PLAIN, "two".getBytes());
+        Assert.assertSame(message, reusedMessage);
+        Assert.assertEquals(0, pool.getAvailableMessages());
+        Assert.assertEquals(2L, reusedMessage.getDeliveryTag());
+        Assert.assertEquals("other", reusedMessage.getExchange());
+        Assert.assertEquals("two", reusedMessage.getBodyAs(String.class));
+    }
+
+    @Test
+    public void shouldBoundPooledMessages() {
+        MessagePool pool = new MessagePool(1, false);
+        Message first = pool.acquire(ENVELOPE, MessageProperties.BASIC, null);
+        Message second = pool.acquire(ENVELOPE, MessageProperties.BASIC, null);
+        first.release();
+        second.release();
+        second.release();
+        Assert.assertEquals(1, pool.getAvailableMessages());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldDetectUsageAfterReleaseInDebugMode() {
+        MessagePool pool = new MessagePool(1, true);
+        Message message = pool.acquire(ENVELOPE, MessageProperties.BASIC, "body".getBytes());
+        message.release();
+        Assert.assertEquals(0, pool.getAvailableMessages());
+        message.getBodyAs(String.class);
+    }
+
+    @Test
+    public void shouldDetectHeaderAndStreamAccessAfterReleaseInDebugMode() {
+        MessagePool pool = new MessagePool(1, true);
+        Message message = pool.acquire(ENVELOPE, MessageProperties.BASIC, "[1,2]".getBytes());
+        message.release();
+        try {
+            message.getHeader("header");
+            Assert.fail("Header of released message was read");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            message.streamBodyAs(Integer.class);
+            Assert.fail("Body of released message was streamed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldIgnoreReleaseOfMessagesNotPooled() {
+        Message message = new Message().body("body");
+        message.release();
+        Assert.assertEquals("body", message.getBodyAs(String.class));
+    }
+}
@@ -1,6 +1,9 @@
 package com.zanox.rabbiteasy;
 
+import com.rabbitmq.client.AMQP.BasicProperties;
 import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.MessageProperties;
 import com.zanox.rabbiteasy.consumer.ConsumerContainer;
 import com.zanox.rabbiteasy.consumer.MessageConsumer;
 import junit.framework.Assert;
@@ -9,7 +12,11 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -68,6 +75,46 @@ public class MessageTest {
         Assert.assertEquals(bodyContent, actualBodyContent);
     }
 
+    @Test
+    public void shouldWriteAndReadPrimitiveNumbers() {
+        message.body(-12345678901234L);
+        Assert.assertEquals(Message.TEXT_PLAIN, message.getBasicProperties().getContentType());
+        Assert.assertEquals("-12345678901234", message.getBodyAs(String.class));
+        Assert.assertEquals(-12345678901234L, message.getBodyAsLong());
+        Assert.assertEquals(Long.valueOf(-12345678901234L), message.getBodyAs(Long.class));
+
+        message.body(42);
+        Assert.assertEquals(42, message.getBodyAsInt());
+        Assert.assertEquals(Short.valueOf((short) 42), message.getBodyAs(Short.class));
+    }
+
+    @Test
+    public void shouldReadNumbersInOtherCharsets() {
+        message.body("-17", Charset.forName("UTF-16"));
+        Assert.assertEquals(-17, message.getBodyAsInt());
+        Assert.assertEquals(Long.valueOf(-17), message.getBodyAs(Long.class));
+    }
+
+    @Test
+    public void shouldWriteCharacterAsText() {
+        message.body('c');
+        Assert.assertEquals("c", message.getBodyAs(String.class));
+    }
+
+    @Test
+    public void shouldWrapDelivery() throws IOException {
+        Envelope envelope = new Envelope(17L, false, "exchange", "routingKey");
+        byte[] body = "delivered".getBytes("UTF-8");
+        Message delivery = new Message(envelope, MessageProperties.TEXT_PLAIN, body);
+
+        Assert.assertEquals("exchange", delivery.getExchange());
+        Assert.assertEquals("routingKey", delivery.getRoutingKey());
+        Assert.assertEquals(17L, delivery.getDeliveryTag());
+        Assert.assertSame(body, delivery.getBodyContent());
+        Assert.assertEquals("delivered", delivery.getBodyAs(String.class));
+        Assert.assertEquals(0, new Message(envelope, MessageProperties.BASIC, null).getBodyContent().length);
+    }
+
     @Test
     public void shouldSetPropertyDeliveryMode() {
         Message message = new Message().exchange("abc").routingKey("123").persistent();
@@ -86,6 +133,103 @@ public class MessageTest {
         Assert.assertEquals(charset, actualCharset);
     }
 
+    @Test
+    public void shouldMaterializePropertiesOnceAfterChanges() {
+        message.persistent().contentType(Message.TEXT_PLAIN).contentEncoding("ISO-8859-1").header("key", "value");
+        Assert.assertEquals("value", message.getHeader("key"));
+
+        BasicProperties properties = message.getBasicProperties();
+        Assert.assertSame(properties, message.getBasicProperties());
+        Assert.assertEquals(Integer.valueOf(Message.DELIVERY_MODE_PERSISTENT), properties.getDeliveryMode());
+        Assert.assertEquals(Message.TEXT_PLAIN, properties.getContentType());
+        Assert.assertEquals("ISO-8859-1", properties.getContentEncoding());
+        Assert.assertEquals("value", properties.getHeaders().get("key"));
+
+        message.header("key", null);
+        Assert.assertEquals("value", properties.getHeaders().get("key"));
+        Assert.assertNull(message.getBasicProperties().getHeaders().get("key"));
+        Assert.assertEquals(Message.TEXT_PLAIN, message.getBasicProperties().getContentType());
+    }
+
+    @Test
+    public void shouldDecodeBodyOncePerType() {
+        TestDTO testDTO = new TestDTO();
+        testDTO.setId(1L);
+        message.body(testDTO);
+
+        TestDTO firstBody = message.getBodyAs(TestDTO.class);
+        Assert.assertSame(firstBody, message.getBodyAs(TestDTO.class));
+        Assert.assertNotNull(message.getBodyAs(String.class));
+        Assert.assertSame(firstBody, message.getBodyAs(TestDTO.class));
+    }
+
+    @Test
+    public void shouldDecodeBodyAgainAfterBodyChanged() {
+        message.body("123");
+        Assert.assertEquals(Integer.valueOf(123), message.getBodyAs(Integer.class));
+        message.body("456");
+        Assert.assertEquals(Integer.valueOf(456), message.getBodyAs(Integer.class));
+    }
+
+    @Test
+    public void shouldProvideReadOnlyBodyViews() throws IOException {
+        byte[] bodyContent = "abcdef".getBytes("UTF-8");
+        message.body(bodyContent);
+
+        ByteBuffer buffer = message.getBodyBuffer();
+        Assert.assertTrue(buffer.isReadOnly());
+        Assert.assertEquals(6, buffer.remaining());
+
+        ByteBuffer slice = message.getBodyBuffer(2, 3);
+        Assert.assertEquals(0, slice.position());
+        Assert.assertEquals(3, slice.remaining());
+        Assert.assertEquals('c', slice.get());
+
+        InputStream stream = message.getBodyStream(4, 2);
+        Assert.assertEquals('e', stream.read());
+        Assert.assertEquals('f', stream.read());
+        Assert.assertEquals(-1, stream.read());
+    }
+
+    @Test
+    public void shouldReadBodyRange() throws IOException {
+        message.body("[{\"id\":1,\"name\":\"one\"}]:12345");
+        String body = message.getBodyAs(String.class);
+        int separator = body.lastIndexOf(':');
+
+        TestDTO testDTO = message.getBodyAs(TestDTO.class, 1, separator - 2);
+        Assert.assertEquals("1:one", testDTO.doBla());
+        Integer number = message.getBodyAs(Integer.class, separator + 1, body.length() - separator - 1);
+        Assert.assertEquals(Integer.valueOf(12345), number);
+    }
+
+    @Test
+    public void shouldStreamBodyElements() {
+        TestDTO first = new TestDTO();
+        first.setId(1L);
+        first.setName("one");
+        TestDTO second = new TestDTO();
+        second.setId(2L);
+        second.setName("two");
+        message.streamBody(Arrays.asList(first, second).iterator());
+        Assert.assertEquals(Message.APPLICATION_JSON, message.getBasicProperties().getContentType());
+
+        Iterator<TestDTO> elements = message.streamBodyAs(TestDTO.class);
+        Assert.assertTrue(elements.hasNext());
+        Assert.assertEquals("1:one", elements.next().doBla());
+        Assert.assertEquals("2:two", elements.next().doBla());
+        Assert.assertFalse(elements.hasNext());
+    }
+
+    @Test
+    public void shouldStreamSingleBodyElement() {
+        message.body("{\"id\":3,\"name\":\"three\"}", Charset.forName("ISO-8859-1"));
+
+        Iterator<TestDTO> elements = message.streamBodyAs(TestDTO.class);
+        Assert.assertEquals("3:three", elements.next().doBla());
+        Assert.assertFalse(elements.hasNext());
+    }
+
     public class MyConsumer extends MessageConsumer {
         @Override
         public void handleMessage(Message message) {
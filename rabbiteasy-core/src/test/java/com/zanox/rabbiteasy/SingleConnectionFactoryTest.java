@@ -0,0 +1,83 @@
+package com.zanox.rabbiteasy;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.FlowListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.zanox.rabbiteasy.publisher.Backpressure;
+import com.zanox.rabbiteasy.publisher.SimplePublisher;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.easymock.EasyMock.capture;
+
+public class SingleConnectionFactoryTest {
+
+    SingleConnectionFactory connectionFactory;
+    FlowControlListener flowControlListener;
+
+    @Before
+    public void before() {
+        connectionFactory = new SingleConnectionFactory();
+        flowControlListener = EasyMock.createMock(FlowControlListener.class);
+        connectionFactory.registerFlowControlListener(flowControlListener);
+    }
+
+    @Test
+    public void shouldBlockWhileAnyChannelFlowIsStopped() throws Exception {
+        Capture<FlowListener> firstFlow = new Capture<FlowListener>();
+        Capture<FlowListener> secondFlow = new Capture<FlowListener>();
+        Capture<ShutdownListener> secondShutdown = new Capture<ShutdownListener>();
+        Channel firstChannel = monitoredChannel(firstFlow, new Capture<ShutdownListener>());
+        Channel secondChannel = monitoredChannel(secondFlow, secondShutdown);
+        flowControlListener.onConnectionBlocked(null);
+        flowControlListener.onConnectionUnblocked(null);
+        EasyMock.replay(flowControlListener, firstChannel, secondChannel);
+
+        connectionFactory.monitorFlow(firstChannel);
+        connectionFactory.monitorFlow(secondChannel);
+        Assert.assertFalse(connectionFactory.isBlocked());
+
+        firstFlow.getValue().handleFlow(false);
+        secondFlow.getValue().handleFlow(false);
+        firstFlow.getValue().handleFlow(false);
+        Assert.assertTrue(connectionFactory.isBlocked());
+        Assert.assertFalse(connectionFactory.awaitUnblocked(1));
+
+        firstFlow.getValue().handleFlow(true);
+        Assert.assertTrue(connectionFactory.isBlocked());
+        secondShutdown.getValue().shutdownCompleted(new ShutdownSignalException(false, false, null, secondChannel));
+        Assert.assertFalse(connectionFactory.isBlocked());
+        Assert.assertTrue(connectionFactory.awaitUnblocked(0));
+        Assert.assertTrue(connectionFactory.getBlockedTime() >= 1);
+
+        EasyMock.verify(flowControlListener, firstChannel, secondChannel);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailFastWhileBlocked() throws Exception {
+        Capture<FlowListener> flow = new Capture<FlowListener>();
+        Channel channel = monitoredChannel(flow, new Capture<ShutdownListener>());
+        flowControlListener.onConnectionBlocked(null);
+        EasyMock.replay(flowControlListener, channel);
+        connectionFactory.monitorFlow(channel);
+        flow.getValue().handleFlow(false);
+
+        SimplePublisher publisher = new SimplePublisher(connectionFactory);
+        publisher.setBackpressure(Backpressure.FAIL, 0);
+        publisher.publish(new Message());
+    }
+
+    private static Channel monitoredChannel(Capture<FlowListener> flowListener,
+                                            Capture<ShutdownListener> shutdownListener) {
+        Channel channel = EasyMock.createMock(Channel.class);
+        channel.addFlowListener(capture(flowListener));
+        channel.addShutdownListener(capture(shutdownListener));
+        return channel;
+    }
+}
@@ -0,0 +1,27 @@
+package com.zanox.rabbiteasy;
+
+public class TestDTO {
+
+    private Long id;
+    private String name;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String doBla() {
+        return id + ":" + name;
+    }
+}
@@ -0,0 +1,52 @@
+package com.zanox.rabbiteasy.codec;
+
+import com.zanox.rabbiteasy.Message;
+import com.zanox.rabbiteasy.TestDTO;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MessageCodecRegistryTest {
+
+    @Test
+    public void shouldProvideJsonCodecByDefault() {
+        MessageCodec codec = MessageCodecRegistry.getCodec(Message.APPLICATION_JSON);
+        Assert.assertTrue(codec instanceof JsonCodec);
+        Assert.assertSame(codec, MessageCodecRegistry.getDefaultObjectCodec());
+    }
+
+    @Test
+    public void shouldIgnoreContentTypeParameters() {
+        MessageCodec codec = MessageCodecRegistry.getCodec("Application/JSON; charset=UTF-8");
+        Assert.assertTrue(codec instanceof JsonCodec);
+    }
+
+    @Test
+    public void shouldLoadCodecsFromServiceLoader() {
+        MessageCodec codec = MessageCodecRegistry.getCodec(TestDTOCodec.CONTENT_TYPE);
+        Assert.assertTrue(codec instanceof TestDTOCodec);
+    }
+
+    @Test
+    public void shouldEncodeAndDecodeWithCodecOfContentType() {
+        TestDTO testDTO = new TestDTO();
+        testDTO.setId(42L);
+        testDTO.setName("forty-two");
+        Message message = new Message().body(testDTO, TestDTOCodec.CONTENT_TYPE);
+
+        Assert.assertEquals(TestDTOCodec.CONTENT_TYPE, message.getBasicProperties().getContentType());
+        Assert.assertEquals(8 + 4 + 9, message.getBodyContent().length);
+        Assert.assertEquals(testDTO.doBla(), message.getBodyAs(TestDTO.class).doBla());
+    }
+
+    @Test
+    public void shouldReadPlainTextTypesWithoutCodec() {
+        Message message = new Message().body(123L);
+        Assert.assertEquals(Long.valueOf(123L), message.getBodyAs(Long.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownContentType() {
+        new Message().body(new TestDTO(), "application/x-unknown");
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.zanox.rabbiteasy.codec;
+
+import com.zanox.rabbiteasy.TestDTO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Length prefixed binary codec for {@link TestDTO}, registered via
+ * META-INF/services in the test resources.
+ */
+public class TestDTOCodec implements MessageCodec {
+
+    public static final String CONTENT_TYPE = "application/x-test-dto";
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public boolean canEncode(Class<?> type) {
+        return TestDTO.class.equals(type);
+    }
+
+    @Override
+    public boolean canDecode(Class<?> type) {
+        return TestDTO.class.equals(type);
+    }
+
+    @Override
+    public byte[] encode(Object body, Charset charset) throws IOException {
+        TestDTO testDTO = (TestDTO) body;
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        DataOutputStream dataOutput = new DataOutputStream(outputStream);
+        dataOutput.writeLong(testDTO.getId());
+        byte[] name = testDTO.getName().getBytes(charset);
+        dataOutput.writeInt(name.length);
+        dataOutput.write(name);
+        dataOutput.flush();
+        return outputStream.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(byte[] body, int offset, int length, Class<T> type, Charset charset) throws IOException {
+        DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(body, offset, length));
+        TestDTO testDTO = new TestDTO();
+        testDTO.setId(dataInput.readLong());
+        byte[] name = new byte[dataInput.readInt()];
+        dataInput.readFully(name);
+        testDTO.setName(new String(name, charset));
+        return (T) testDTO;
+    }
+}
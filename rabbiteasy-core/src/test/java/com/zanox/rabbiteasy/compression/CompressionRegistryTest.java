@@ -0,0 +1,117 @@
+package com.zanox.rabbiteasy.compression;
+
+import com.zanox.rabbiteasy.Message;
+import com.zanox.rabbiteasy.TestDTO;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class CompressionRegistryTest {
+
+    @After
+    public void after() {
+        CompressionRegistry.disableCompression();
+    }
+
+    @Test
+    public void shouldNotCompressByDefault() {
+        Message message = new Message().body(largeBody());
+        Assert.assertNull(message.getHeader(CompressionRegistry.COMPRESSION_HEADER));
+        Assert.assertEquals(largeBody(), new String(message.getBodyContent(), Message.DEFAULT_MESSAGE_CHARSET));
+    }
+
+    @Test
+    public void shouldCompressBodiesAboveThreshold() {
+        CompressionRegistry.enableCompression(GzipCompressor.NAME, 100);
+
+        Message smallMessage = new Message().body("small");
+        Assert.assertNull(smallMessage.getHeader(CompressionRegistry.COMPRESSION_HEADER));
+
+        Message largeMessage = new Message().body(largeBody());
+        Assert.assertEquals(GzipCompressor.NAME, largeMessage.getHeader(CompressionRegistry.COMPRESSION_HEADER));
+        Assert.assertTrue(largeMessage.getBodyContent().length < largeBody().length());
+        Assert.assertEquals(largeBody(), largeMessage.getBodyAs(String.class));
+    }
+
+    @Test
+    public void shouldDecompressObjectsTransparently() {
+        CompressionRegistry.enableCompression(DeflateCompressor.NAME, 0);
+        TestDTO testDTO = new TestDTO();
+        testDTO.setId(7L);
+        testDTO.setName(largeBody());
+        Message message = new Message().body(testDTO);
+        Assert.assertEquals(DeflateCompressor.NAME, message.getHeader(CompressionRegistry.COMPRESSION_HEADER));
+
+        CompressionRegistry.disableCompression();
+        Assert.assertEquals(testDTO.doBla(), message.getBodyAs(TestDTO.class).doBla());
+    }
+
+    @Test
+    public void shouldExposeDecompressedBodyInViews() throws Exception {
+        CompressionRegistry.enableCompression(GzipCompressor.NAME, 0);
+        Message message = new Message().body(largeBody());
+        byte[] body = largeBody().getBytes(Message.DEFAULT_MESSAGE_CHARSET);
+
+        ByteBuffer buffer = message.getBodyBuffer(10, 20);
+        byte[] range = new byte[buffer.remaining()];
+        buffer.get(range);
+        Assert.assertArrayEquals(Arrays.copyOfRange(body, 10, 30), range);
+        Assert.assertEquals(body.length, message.getBodyBuffer().remaining());
+
+        InputStream stream = message.getBodyStream(5, 3);
+        Assert.assertEquals(body[5], (byte) stream.read());
+        Assert.assertEquals(2, stream.available());
+    }
+
+    @Test
+    public void shouldRemoveCompressionHeaderForUncompressedBody() {
+        CompressionRegistry.enableCompression(DeflateCompressor.NAME, 100);
+        Message message = new Message().body(largeBody());
+        message.body("small");
+        Assert.assertNull(message.getHeader(CompressionRegistry.COMPRESSION_HEADER));
+        Assert.assertEquals("small", message.getBodyAs(String.class));
+    }
+
+    @Test
+    public void shouldBeCompatibleWithJdkGzipStreams() throws Exception {
+        BodyCompressor compressor = CompressionRegistry.getCompressor(GzipCompressor.NAME);
+        byte[] body = largeBody().getBytes("UTF-8");
+
+        GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(compressor.compress(body, 0, body.length)));
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) > 0) {
+            decompressed.write(buffer, 0, read);
+        }
+        Assert.assertArrayEquals(body, decompressed.toByteArray());
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream outputStream = new GZIPOutputStream(compressed);
+        outputStream.write(body);
+        outputStream.close();
+        byte[] compressedBody = compressed.toByteArray();
+        Assert.assertArrayEquals(body, compressor.decompress(compressedBody, 0, compressedBody.length));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownCompressor() {
+        CompressionRegistry.enableCompression("unknown", 0);
+    }
+
+    private static String largeBody() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            body.append("{\"id\":").append(i).append(",\"name\":\"element\"}");
+        }
+        return body.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package com.zanox.rabbiteasy.consumer;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.MessageProperties;
+import com.zanox.rabbiteasy.Message;
+import com.zanox.rabbiteasy.MessagePool;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class MessageConsumerTest {
+
+    @Test
+    public void shouldReleasePooledMessageAfterAck() throws Exception {
+        Channel channel = EasyMock.createMock(Channel.class);
+        channel.basicAck(5L, false);
+        EasyMock.replay(channel);
+
+        RecordingConsumer consumer = new RecordingConsumer();
+        MessagePool pool = new MessagePool(1, false);
+        consumer.setChannel(channel);
+        consumer.setConfiguration(new ConsumerConfiguration("queue"));
+        consumer.setMessagePool(pool);
+
+        consumer.handleDelivery("tag", new Envelope(5L, false, "exchange", "key"), MessageProperties.TEXT_PLAIN, "body".getBytes());
+
+        EasyMock.verify(channel);
+        Assert.assertEquals("body", consumer.body);
+        Assert.assertEquals(1, pool.getAvailableMessages());
+    }
+
+    @Test
+    public void shouldHandleDeliveryWithDeliveryExecutor() throws Exception {
+        Channel channel = EasyMock.createMock(Channel.class);
+        channel.basicAck(7L, false);
+        EasyMock.replay(channel);
+
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        ConsumerConfiguration configuration = new ConsumerConfiguration("queue");
+        configuration.setDeliveryExecutor(new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                tasks.add(task);
+            }
+        });
+        RecordingConsumer consumer = new RecordingConsumer();
+        consumer.setChannel(channel);
+        consumer.setConfiguration(configuration);
+
+        consumer.handleDelivery("tag", new Envelope(7L, false, "exchange", "key"), MessageProperties.TEXT_PLAIN, "body".getBytes());
+        Assert.assertNull(consumer.body);
+        Assert.assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        EasyMock.verify(channel);
+        Assert.assertEquals("body", consumer.body);
+    }
+
+    private static class RecordingConsumer extends MessageConsumer {
+
+        String body;
+
+        @Override
+        public void handleMessage(Message message) {
+            body = message.getBodyAs(String.class);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.zanox.rabbiteasy.outbox;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+public class OutboxJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldRemoveRecordsInAppendOrder() throws IOException {
+        OutboxJournal journal = new OutboxJournal(folder.getRoot(), 1024);
+        journal.append(bytes("first"));
+        journal.append(bytes("second"));
+        journal.append(bytes("third"));
+        Assert.assertEquals(3, journal.size());
+
+        List<byte[]> records = journal.peek(2);
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals("first", string(records.get(0)));
+        Assert.assertEquals("second", string(records.get(1)));
+
+        journal.remove(2);
+        Assert.assertEquals(1, journal.size());
+        Assert.assertEquals("third", string(journal.peek(10).get(0)));
+        journal.remove(1);
+        Assert.assertTrue(journal.isEmpty());
+        Assert.assertTrue(journal.peek(10).isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void shouldRollAndDeleteSegments() throws IOException {
+        OutboxJournal journal = new OutboxJournal(folder.getRoot(), 64);
+        for (int i = 0; i < 10; i++) {
+            journal.append(bytes("record-" + i));
+        }
+        Assert.assertTrue(segmentFiles().length > 1);
+        Assert.assertEquals(10, journal.peek(100).size());
+
+        journal.remove(10);
+        Assert.assertEquals(1, segmentFiles().length);
+        journal.close();
+    }
+
+    @Test
+    public void shouldRecoverRecordsAfterReopening() throws IOException {
+        OutboxJournal journal = new OutboxJournal(folder.getRoot(), 64);
+        for (int i = 0; i < 5; i++) {
+            journal.append(bytes("record-" + i));
+        }
+        journal.remove(2);
+        journal.close();
+
+        OutboxJournal reopenedJournal = new OutboxJournal(folder.getRoot(), 64);
+        Assert.assertEquals(3, reopenedJournal.size());
+        Assert.assertEquals("record-2", string(reopenedJournal.peek(1).get(0)));
+        reopenedJournal.append(bytes("record-5"));
+        Assert.assertEquals("record-5", string(reopenedJournal.peek(10).get(3)));
+        reopenedJournal.close();
+    }
+
+    @Test
+    public void shouldDropRecordsWithInvalidChecksum() throws IOException {
+        OutboxJournal journal = new OutboxJournal(folder.getRoot(), 1024);
+        journal.append(bytes("valid"));
+        journal.append(bytes("corrupt"));
+        journal.close();
+
+        File segmentFile = segmentFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segmentFile, "rw");
+        int corruptRecordContent = OutboxSegment.HEADER_SIZE + 2 * OutboxSegment.RECORD_HEADER_SIZE + 5;
+        file.seek(corruptRecordContent);
+        file.write('X');
+        file.close();
+
+        OutboxJournal reopenedJournal = new OutboxJournal(folder.getRoot(), 1024);
+        Assert.assertEquals(1, reopenedJournal.size());
+        Assert.assertEquals("valid", string(reopenedJournal.peek(10).get(0)));
+        reopenedJournal.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectRecordsLargerThanSegment() throws IOException {
+        OutboxJournal journal = new OutboxJournal(folder.getRoot(), 64);
+        journal.append(new byte[64]);
+    }
+
+    private File[] segmentFiles() {
+        return folder.getRoot().listFiles();
+    }
+
+    private static byte[] bytes(String value) throws IOException {
+        return value.getBytes("UTF-8");
+    }
+
+    private static String string(byte[] value) throws IOException {
+        return new String(value, "UTF-8");
+    }
+}
@@ -0,0 +1,212 @@
+package com.zanox.rabbiteasy.publisher;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+
+import java.io.InterruptedIOException;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ReturnListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.easymock.Capture;
+import org.easymock.IAnswer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.powermock.api.easymock.PowerMock;
+
+import com.zanox.rabbiteasy.Message;
+
+public class AsyncConfirmedPublisherTest extends MessagePublisherTest {
+
+    @Test
+    public void shouldCompleteFuturesOnAck() throws Exception {
+        Message first = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        Message second = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        AsyncConfirmedPublisher publisher = new AsyncConfirmedPublisher(connectionFactory, 2);
+
+        Capture<ConfirmListener> confirmListener = mockConfirmChannel();
+        expect(channel.getNextPublishSeqNo()).andReturn(1L);
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, first.getBasicProperties(), first.getBodyContent());
+        expect(channel.getNextPublishSeqNo()).andReturn(2L);
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, second.getBasicProperties(), second.getBodyContent());
+        PowerMock.replayAll();
+
+        PublishFuture firstFuture = publisher.publishAsync(first, DeliveryOptions.NONE);
+        PublishFuture secondFuture = publisher.publishAsync(second, DeliveryOptions.NONE);
+        Assert.assertFalse(firstFuture.isDone());
+        Assert.assertEquals(2, publisher.getOutstandingConfirms());
+        Assert.assertFalse(publisher.awaitOutstandingConfirms(1, TimeUnit.MILLISECONDS));
+
+        confirmListener.getValue().handleAck(2L, true);
+
+        Assert.assertSame(first, firstFuture.get());
+        Assert.assertTrue(secondFuture.isConfirmed());
+        Assert.assertEquals(0, publisher.getOutstandingConfirms());
+        Assert.assertTrue(publisher.awaitOutstandingConfirms(1, TimeUnit.MILLISECONDS));
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void shouldKeepInterruptWhileAwaitingFuture() throws Exception {
+        PublishFuture future = new PublishFuture(new Message(), null);
+        Thread.currentThread().interrupt();
+        try {
+            future.await();
+            Assert.fail("Interrupted wait must fail");
+        } catch (InterruptedIOException e) {
+            Assert.assertTrue(Thread.interrupted());
+        }
+    }
+
+    @Test
+    public void shouldFailFutureOnNack() throws Exception {
+        Message message = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        AsyncConfirmedPublisher publisher = new AsyncConfirmedPublisher(connectionFactory);
+
+        Capture<ConfirmListener> confirmListener = mockConfirmChannel();
+        expect(channel.getNextPublishSeqNo()).andReturn(7L);
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, message.getBasicProperties(), message.getBodyContent());
+        PowerMock.replayAll();
+
+        final Throwable[] callbackFailure = new Throwable[1];
+        PublishFuture future = publisher.publishAsync(message, DeliveryOptions.NONE, new PublishCallback() {
+            @Override
+            public void onConfirmed(Message message) {
+            }
+
+            @Override
+            public void onFailed(Message message, Throwable cause) {
+                callbackFailure[0] = cause;
+            }
+        });
+        confirmListener.getValue().handleNack(7L, false);
+
+        Assert.assertTrue(future.isDone());
+        Assert.assertFalse(future.isConfirmed());
+        Assert.assertNotNull(callbackFailure[0]);
+        try {
+            future.get();
+            Assert.fail("Nacked message must fail");
+        } catch (ExecutionException e) {
+            Assert.assertSame(callbackFailure[0], e.getCause());
+        }
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void shouldFailFutureOfReturnedMessage() throws Exception {
+        Message message = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        AsyncConfirmedPublisher publisher = new AsyncConfirmedPublisher(connectionFactory);
+        final Message[] returnedMessage = new Message[1];
+        publisher.setReturnCallback(new ReturnCallback() {
+            @Override
+            public void onReturned(Message message, int replyCode, String replyText) {
+                returnedMessage[0] = message;
+            }
+        });
+
+        Capture<ConfirmListener> confirmListener = mockConfirmChannel();
+        Capture<ReturnListener> returnListener = new Capture<ReturnListener>();
+        channel.addReturnListener(capture(returnListener));
+        expect(channel.getNextPublishSeqNo()).andReturn(1L);
+        Capture<AMQP.BasicProperties> properties = new Capture<AMQP.BasicProperties>();
+        channel.basicPublish(eq(TEST_EXCHANGE), eq(TEST_ROUTING_KEY), eq(true), eq(false),
+                capture(properties), aryEq(message.getBodyContent()));
+        PowerMock.replayAll();
+
+        PublishFuture future = publisher.publishAsync(message, DeliveryOptions.MANDATORY);
+        Assert.assertNotNull(properties.getValue().getHeaders().get(DiscretePublisher.PUBLISH_ID_HEADER));
+        returnListener.getValue().handleReturn(312, "NO_ROUTE", TEST_EXCHANGE, TEST_ROUTING_KEY,
+                properties.getValue(), message.getBodyContent());
+        confirmListener.getValue().handleAck(1L, false);
+
+        Assert.assertTrue(future.isDone());
+        Assert.assertFalse(future.isConfirmed());
+        Assert.assertSame(message, returnedMessage[0]);
+        Assert.assertEquals(0, publisher.getOutstandingConfirms());
+        try {
+            future.get();
+            Assert.fail("Returned message must fail");
+        } catch (ExecutionException e) {
+            Assert.assertEquals(312, ((MessageReturnedException) e.getCause()).getReplyCode());
+        }
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void shouldFailFutureIfChannelIsAlreadyClosed() throws Exception {
+        Message message = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        AsyncConfirmedPublisher publisher = new AsyncConfirmedPublisher(connectionFactory);
+        publisher.setRetryPolicy(RetryPolicy.NO_RETRY);
+
+        mockConfirmChannel();
+        expect(channel.getNextPublishSeqNo()).andReturn(1L);
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, message.getBasicProperties(), message.getBodyContent());
+        expectLastCall().andThrow(new AlreadyClosedException("channel is already closed", channel));
+        PowerMock.replayAll();
+
+        PublishFuture future = publisher.publishAsync(message, DeliveryOptions.NONE);
+
+        Assert.assertTrue(future.isDone());
+        Assert.assertFalse(future.isConfirmed());
+        Assert.assertEquals(0, publisher.getOutstandingConfirms());
+        try {
+            future.get();
+            Assert.fail("Message published on closed channel must fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getCause() instanceof AlreadyClosedException);
+        }
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void shouldNotRetryFutureFailedByChannelShutdown() throws Exception {
+        Message message = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        AsyncConfirmedPublisher publisher = new AsyncConfirmedPublisher(connectionFactory);
+
+        mockConnectionOperations();
+        expect(channel.confirmSelect()).andReturn(null);
+        channel.addConfirmListener(anyObject(ConfirmListener.class));
+        final Capture<ShutdownListener> shutdownListener = new Capture<ShutdownListener>();
+        channel.addShutdownListener(capture(shutdownListener));
+        expect(channel.getNextPublishSeqNo()).andReturn(1L);
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, message.getBasicProperties(), message.getBodyContent());
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            @Override
+            public Object answer() throws Throwable {
+                shutdownListener.getValue().shutdownCompleted(
+                        new ShutdownSignalException(false, false, null, channel));
+                throw new IOException("Channel closed");
+            }
+        });
+        PowerMock.replayAll();
+
+        PublishFuture future = publisher.publishAsync(message, DeliveryOptions.NONE);
+
+        Assert.assertTrue(future.isDone());
+        Assert.assertFalse(future.isConfirmed());
+        Assert.assertEquals(0, publisher.getOutstandingConfirms());
+        PowerMock.verifyAll();
+    }
+
+    private Capture<ConfirmListener> mockConfirmChannel() throws Exception {
+        mockConnectionOperations();
+        expect(channel.confirmSelect()).andReturn(null);
+        Capture<ConfirmListener> confirmListener = new Capture<ConfirmListener>();
+        channel.addConfirmListener(capture(confirmListener));
+        expectLastCall().once();
+        channel.addShutdownListener(anyObject(ShutdownListener.class));
+        expectLastCall().once();
+        return confirmListener;
+    }
+}
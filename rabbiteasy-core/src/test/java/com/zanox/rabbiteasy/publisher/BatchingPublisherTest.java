@@ -0,0 +1,67 @@
+package com.zanox.rabbiteasy.publisher;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.powermock.api.easymock.PowerMock;
+
+import com.zanox.rabbiteasy.Message;
+
+public class BatchingPublisherTest extends MessagePublisherTest {
+
+    @Test
+    public void shouldPublishFullBatchWithinOneTransaction() throws Exception {
+        Message first = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        Message second = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+
+        mockConnectionOperations();
+        expect(channel.txSelect()).andReturn(null).once();
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, first.getBasicProperties(), first.getBodyContent());
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, second.getBasicProperties(), second.getBodyContent());
+        expect(channel.txCommit()).andReturn(null).once();
+        PowerMock.replayAll();
+
+        BatchingPublisher publisher = new BatchingPublisher(connectionFactory, PublisherReliability.TRANSACTIONAL, 2, 60000);
+        PublishFuture firstFuture = publisher.publishAsync(first, DeliveryOptions.NONE);
+        PublishFuture secondFuture = publisher.publishAsync(second, DeliveryOptions.NONE);
+
+        Assert.assertSame(first, firstFuture.get(5, TimeUnit.SECONDS));
+        Assert.assertSame(second, secondFuture.get(5, TimeUnit.SECONDS));
+        publisher.close();
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void shouldPublishAfterLingerTime() throws Exception {
+        Message message = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+
+        mockConnectionOperations();
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, message.getBasicProperties(), message.getBodyContent());
+        expectLastCall().once();
+        PowerMock.replayAll();
+
+        BatchingPublisher publisher = new BatchingPublisher(connectionFactory, PublisherReliability.NONE, 100, 1);
+        publisher.publish(message);
+        publisher.close();
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void shouldFailMessagesAfterClose() throws Exception {
+        mockConnectionOperations();
+        PowerMock.replayAll();
+
+        BatchingPublisher publisher = new BatchingPublisher(connectionFactory, PublisherReliability.NONE);
+        publisher.close();
+        PublishFuture future = publisher.publishAsync(new Message(), DeliveryOptions.NONE);
+
+        Assert.assertTrue(future.isDone());
+        Assert.assertFalse(future.isConfirmed());
+    }
+}
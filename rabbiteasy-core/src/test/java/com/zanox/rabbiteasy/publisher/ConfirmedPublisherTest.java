@@ -1,12 +1,27 @@
 package com.zanox.rabbiteasy.publisher;
 
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.expectLastCall;
 
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ReturnListener;
+import org.easymock.Capture;
+import org.easymock.IAnswer;
+import org.junit.Assert;
 import org.junit.Test;
 import org.powermock.api.easymock.PowerMock;
 
+import com.zanox.rabbiteasy.LogPolicy;
 import com.zanox.rabbiteasy.Message;
+import org.slf4j.LoggerFactory;
 
 public class ConfirmedPublisherTest extends MessagePublisherTest {
     
@@ -28,4 +43,178 @@ public class ConfirmedPublisherTest extends MessagePublisherTest {
         PowerMock.verifyAll();
     }
 
+    @Test
+    public void shouldKeepInterruptWhileWaitingForAck() throws Exception {
+        Message message = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        ConfirmedPublisher publisher = new ConfirmedPublisher(connectionFactory);
+
+        mockConnectionOperations();
+        expect(channel.confirmSelect()).andReturn(null);
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, message.getBasicProperties(), message.getBodyContent());
+        channel.waitForConfirmsOrDie();
+        expectLastCall().andThrow(new InterruptedException());
+        PowerMock.replayAll();
+
+        try {
+            publisher.publish(message);
+            Assert.fail("Interrupted publish must fail");
+        } catch (InterruptedIOException e) {
+            Assert.assertTrue(Thread.interrupted());
+        }
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void shouldAskLogPolicyOncePerMessage() throws Exception {
+        Message message = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        ConfirmedPublisher publisher = new ConfirmedPublisher(connectionFactory);
+        LogPolicy logPolicy = LogPolicy.sampled(2);
+        publisher.setLogPolicy(logPolicy);
+
+        mockConnectionOperations();
+        expect(channel.confirmSelect()).andReturn(null);
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, message.getBasicProperties(), message.getBodyContent());
+        expectLastCall().once();
+        channel.waitForConfirmsOrDie();
+        expectLastCall().once();
+        PowerMock.replayAll();
+
+        publisher.publish(message);
+
+        PowerMock.verifyAll();
+        // The first message was sampled, so the second one is not
+        Assert.assertFalse(logPolicy.isInfoEnabled(LoggerFactory.getLogger(ConfirmedPublisherTest.class)));
+    }
+
+    @Test
+    public void shouldPublishBatchAndWaitOnce() throws Exception {
+        Message first = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        Message second = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        ConfirmedPublisher publisher = new ConfirmedPublisher(connectionFactory);
+
+        mockConnectionOperations();
+        expect(channel.confirmSelect()).andReturn(null);
+        final Capture<ConfirmListener> confirmListener = new Capture<ConfirmListener>();
+        channel.addConfirmListener(capture(confirmListener));
+        expect(channel.getNextPublishSeqNo()).andReturn(1L);
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, first.getBasicProperties(), first.getBodyContent());
+        expect(channel.getNextPublishSeqNo()).andReturn(2L);
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, second.getBasicProperties(), second.getBodyContent());
+        expectLastCall().andAnswer(new ConfirmAnswer(confirmListener, 2L, true, true));
+        PowerMock.replayAll();
+
+        publisher.publish(Arrays.asList(first, second));
+
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void shouldUntrackConfirmedBatchMessages() throws Exception {
+        Message first = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        Message second = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        ConfirmedPublisher publisher = new ConfirmedPublisher(connectionFactory);
+        publisher.setReturnCallback(new ReturnCallback() {
+            @Override
+            public void onReturned(Message message, int replyCode, String replyText) {
+            }
+        });
+
+        mockConnectionOperations();
+        expect(channel.confirmSelect()).andReturn(null);
+        final Capture<ConfirmListener> confirmListener = new Capture<ConfirmListener>();
+        channel.addConfirmListener(capture(confirmListener));
+        channel.addReturnListener(anyObject(ReturnListener.class));
+        expect(channel.getNextPublishSeqNo()).andReturn(1L);
+        channel.basicPublish(eq(TEST_EXCHANGE), eq(TEST_ROUTING_KEY), eq(true), eq(false),
+                anyObject(AMQP.BasicProperties.class), aryEq(first.getBodyContent()));
+        expect(channel.getNextPublishSeqNo()).andReturn(2L);
+        channel.basicPublish(eq(TEST_EXCHANGE), eq(TEST_ROUTING_KEY), eq(true), eq(false),
+                anyObject(AMQP.BasicProperties.class), aryEq(second.getBodyContent()));
+        expectLastCall().andAnswer(new ConfirmAnswer(confirmListener, 2L, true, true));
+        PowerMock.replayAll();
+
+        publisher.publish(Arrays.asList(first, second), DeliveryOptions.MANDATORY);
+
+        PowerMock.verifyAll();
+        Assert.assertEquals(0, publisher.getTrackedReturns());
+    }
+
+    @Test
+    public void shouldRepublishOnlyNackedMessages() throws Exception {
+        Message first = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        Message second = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        ConfirmedPublisher publisher = new ConfirmedPublisher(connectionFactory);
+
+        mockConnectionOperations();
+        expect(channel.confirmSelect()).andReturn(null).times(2);
+        final Capture<ConfirmListener> confirmListener = new Capture<ConfirmListener>();
+        channel.addConfirmListener(capture(confirmListener));
+        expect(channel.getNextPublishSeqNo()).andReturn(1L);
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, first.getBasicProperties(), first.getBodyContent());
+        expectLastCall().andAnswer(new ConfirmAnswer(confirmListener, 1L, false, false));
+        expect(channel.getNextPublishSeqNo()).andReturn(2L);
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, second.getBasicProperties(), second.getBodyContent());
+        expectLastCall().andAnswer(new ConfirmAnswer(confirmListener, 2L, false, true));
+        expect(channel.getNextPublishSeqNo()).andReturn(3L);
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, first.getBasicProperties(), first.getBodyContent());
+        expectLastCall().andAnswer(new ConfirmAnswer(confirmListener, 3L, false, true));
+        PowerMock.replayAll();
+
+        BatchPublishResult result = publisher.publishBatch(Arrays.asList(first, second), DeliveryOptions.NONE);
+
+        PowerMock.verifyAll();
+        Assert.assertTrue(result.isAllConfirmed());
+        Assert.assertEquals(2, result.getAttempts());
+        Assert.assertEquals(BatchPublishResult.Outcome.CONFIRMED, result.getOutcome(0));
+    }
+
+    @Test
+    public void shouldReportTimedOutMessages() throws Exception {
+        Message message = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        ConfirmedPublisher publisher = new ConfirmedPublisher(connectionFactory);
+        publisher.setConfirmTimeout(1);
+
+        mockConnectionOperations();
+        expect(channel.confirmSelect()).andReturn(null).times(DiscretePublisher.DEFAULT_RETRY_ATTEMPTS);
+        channel.addConfirmListener(capture(new Capture<ConfirmListener>()));
+        expect(channel.getNextPublishSeqNo()).andReturn(1L).times(DiscretePublisher.DEFAULT_RETRY_ATTEMPTS);
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, message.getBasicProperties(), message.getBodyContent());
+        expectLastCall().times(DiscretePublisher.DEFAULT_RETRY_ATTEMPTS);
+        PowerMock.replayAll();
+
+        BatchPublishResult result = publisher.publishBatch(Arrays.asList(message), DeliveryOptions.NONE);
+
+        PowerMock.verifyAll();
+        Assert.assertFalse(result.isAllConfirmed());
+        Assert.assertEquals(BatchPublishResult.Outcome.TIMED_OUT, result.getOutcome(0));
+        Assert.assertEquals(Arrays.asList(message), result.getUnconfirmedMessages());
+    }
+
+    /**
+     * Simulates the broker confirming messages when a message is published.
+     */
+    private static class ConfirmAnswer implements IAnswer<Object> {
+
+        private final Capture<ConfirmListener> confirmListener;
+        private final long deliveryTag;
+        private final boolean multiple;
+        private final boolean ack;
+
+        ConfirmAnswer(Capture<ConfirmListener> confirmListener, long deliveryTag, boolean multiple, boolean ack) {
+            this.confirmListener = confirmListener;
+            this.deliveryTag = deliveryTag;
+            this.multiple = multiple;
+            this.ack = ack;
+        }
+
+        @Override
+        public Object answer() throws Throwable {
+            if (ack) {
+                confirmListener.getValue().handleAck(deliveryTag, multiple);
+            } else {
+                confirmListener.getValue().handleNack(deliveryTag, multiple);
+            }
+            return null;
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.zanox.rabbiteasy.Message;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Date;
+
+public class OutboxRecordTest {
+
+    @Test
+    public void shouldRestoreMessage() throws IOException {
+        Date timestamp = new Date();
+        Message message = new Message()
+                .exchange("exchange")
+                .routingKey("routingKey")
+                .persistent()
+                .header("count", 3)
+                .header("name", "value")
+                .header("sent", timestamp)
+                .body("content");
+
+        byte[] record = new OutboxRecord(message, DeliveryOptions.MANDATORY).encode();
+        OutboxRecord restored = OutboxRecord.decode(record);
+
+        Message restoredMessage = restored.getMessage();
+        Assert.assertEquals(DeliveryOptions.MANDATORY, restored.getDeliveryOptions());
+        Assert.assertEquals("exchange", restoredMessage.getExchange());
+        Assert.assertEquals("routingKey", restoredMessage.getRoutingKey());
+        Assert.assertEquals("content", restoredMessage.getBodyAs(String.class));
+        Assert.assertEquals(Integer.valueOf(Message.DELIVERY_MODE_PERSISTENT),
+                restoredMessage.getBasicProperties().getDeliveryMode());
+        Assert.assertEquals(message.getBasicProperties().getContentType(),
+                restoredMessage.getBasicProperties().getContentType());
+        Assert.assertEquals(3, restoredMessage.getHeader("count"));
+        Assert.assertEquals("value", restoredMessage.getHeader("name"));
+        Assert.assertEquals(timestamp, restoredMessage.getHeader("sent"));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectInvalidDeliveryOptions() throws IOException {
+        Message message = new Message().exchange("exchange").routingKey("routingKey");
+        byte[] record = new OutboxRecord(message, DeliveryOptions.NONE).encode();
+        // Version, exchange and routing key precede the delivery options
+        record[1 + 2 + "exchange".length() + 2 + "routingKey".length()] = 42;
+        OutboxRecord.decode(record);
+    }
+}
@@ -0,0 +1,56 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.rabbitmq.client.MessageProperties;
+import com.zanox.rabbiteasy.Message;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class PublishTemplateTest {
+
+    private static final String TEST_EXCHANGE = "exchange";
+    private static final String TEST_ROUTING_KEY = "routingKey";
+
+    @Test
+    public void shouldCreateMessagesForDestination() {
+        PublishTemplate template = new PublishTemplate(TEST_EXCHANGE, TEST_ROUTING_KEY,
+                MessageProperties.BASIC, true, DeliveryOptions.MANDATORY);
+        Message message = template.createMessage(new byte[] { 1, 2, 3 });
+        Assert.assertEquals(TEST_EXCHANGE, message.getExchange());
+        Assert.assertEquals(TEST_ROUTING_KEY, message.getRoutingKey());
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, message.getBodyContent());
+        Assert.assertEquals(Message.DELIVERY_MODE_PERSISTENT,
+                message.getBasicProperties().getDeliveryMode().intValue());
+        Assert.assertEquals(DeliveryOptions.MANDATORY, template.getDeliveryOptions());
+    }
+
+    @Test
+    public void shouldEncodeBodiesLikeMessages() {
+        PublishTemplate template = new PublishTemplate(TEST_EXCHANGE, TEST_ROUTING_KEY,
+                MessageProperties.BASIC, false, DeliveryOptions.NONE);
+        Map<String, Integer> content = Collections.singletonMap("id", 42);
+        Object[] bodies = { "text", 42L, 'c', true, content };
+        for (Object body : bodies) {
+            Message expected = new Message().body(body);
+            Message message = template.createMessage(body);
+            Assert.assertArrayEquals(expected.getBodyContent(), message.getBodyContent());
+            Assert.assertEquals(expected.getBasicProperties().getContentType(),
+                    message.getBasicProperties().getContentType());
+            Assert.assertEquals(expected.getBasicProperties().getContentEncoding(),
+                    message.getBasicProperties().getContentEncoding());
+        }
+    }
+
+    @Test
+    public void shouldShareResolvedProperties() {
+        PublishTemplate template = new PublishTemplate(TEST_EXCHANGE, TEST_ROUTING_KEY,
+                MessageProperties.BASIC, true, DeliveryOptions.NONE);
+        Message first = template.createMessage("first");
+        Message second = template.createMessage("second");
+        Assert.assertSame(first.getBasicProperties(), second.getBasicProperties());
+        Assert.assertEquals(MessageProperties.BASIC.getContentType(),
+                template.createMessage(null).getBasicProperties().getContentType());
+    }
+}
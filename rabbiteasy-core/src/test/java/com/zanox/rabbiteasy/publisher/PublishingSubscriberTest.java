@@ -0,0 +1,100 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.rabbitmq.client.ConnectionFactory;
+import com.zanox.rabbiteasy.Message;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class PublishingSubscriberTest {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private List<PublishCallback> pendingCallbacks;
+    private TestSubscription subscription;
+    private PublishingSubscriber subscriber;
+
+    @Before
+    public void before() {
+        pendingCallbacks = new ArrayList<PublishCallback>();
+        subscription = new TestSubscription();
+        AsyncConfirmedPublisher publisher = new AsyncConfirmedPublisher((ConnectionFactory) null) {
+            @Override
+            public PublishFuture publishAsync(Message message, DeliveryOptions deliveryOptions,
+                                              PublishCallback callback) {
+                pendingCallbacks.add(callback);
+                return null;
+            }
+        };
+        subscriber = new PublishingSubscriber(publisher, DeliveryOptions.NONE, 2, DIRECT_EXECUTOR);
+        subscriber.onSubscribe(subscription);
+    }
+
+    @Test
+    public void shouldRequestOneMessagePerConfirm() {
+        Assert.assertEquals(2, subscription.requested);
+        subscriber.onNext(new Message());
+        subscriber.onNext(new Message());
+        Assert.assertEquals(2, subscriber.getOutstandingConfirms());
+        pendingCallbacks.get(0).onConfirmed(null);
+        Assert.assertEquals(3, subscription.requested);
+        Assert.assertEquals(1, subscriber.getOutstandingConfirms());
+    }
+
+    @Test
+    public void shouldBeDoneWhenAllMessagesAreConfirmed() {
+        subscriber.onNext(new Message());
+        subscriber.onComplete();
+        Assert.assertFalse(subscriber.isDone());
+        pendingCallbacks.get(0).onConfirmed(null);
+        Assert.assertTrue(subscriber.isDone());
+        Assert.assertNull(subscriber.getFailure());
+        Assert.assertEquals(2, subscription.requested);
+    }
+
+    @Test
+    public void shouldCancelSubscriptionOnFailedMessage() {
+        subscriber.onNext(new Message());
+        IOException failure = new IOException("Message was rejected by the broker");
+        pendingCallbacks.get(0).onFailed(null, failure);
+        Assert.assertTrue(subscriber.isDone());
+        Assert.assertSame(failure, subscriber.getFailure());
+        Assert.assertTrue(subscription.cancelled);
+        subscriber.onNext(new Message());
+        Assert.assertEquals(1, pendingCallbacks.size());
+    }
+
+    @Test
+    public void shouldCancelSecondSubscription() {
+        TestSubscription secondSubscription = new TestSubscription();
+        subscriber.onSubscribe(secondSubscription);
+        Assert.assertTrue(secondSubscription.cancelled);
+        Assert.assertEquals(0, secondSubscription.requested);
+    }
+
+    private static class TestSubscription implements MessageSubscription {
+
+        private long requested;
+        private boolean cancelled;
+
+        @Override
+        public void request(long amount) {
+            requested += amount;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
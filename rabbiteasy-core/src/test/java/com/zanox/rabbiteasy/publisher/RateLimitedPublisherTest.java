@@ -0,0 +1,39 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.zanox.rabbiteasy.Message;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RateLimitedPublisherTest {
+
+    @Test
+    public void shouldRejectPublishExceedingRate() throws Exception {
+        MessagePublisher publisher = EasyMock.createMock(MessagePublisher.class);
+        Message first = new Message().body("12345");
+        Message second = new Message().body("67890");
+        publisher.publish(first, DeliveryOptions.NONE);
+        EasyMock.replay(publisher);
+
+        RateLimitedPublisher rateLimitedPublisher = new RateLimitedPublisher(publisher, 100, 8);
+        Assert.assertTrue(rateLimitedPublisher.tryPublish(first, DeliveryOptions.NONE));
+        Assert.assertFalse(rateLimitedPublisher.tryPublish(second, DeliveryOptions.NONE));
+
+        EasyMock.verify(publisher);
+    }
+
+    @Test
+    public void shouldNotConsumeMessageTokensIfBytesExceeded() throws Exception {
+        MessagePublisher publisher = EasyMock.createMock(MessagePublisher.class);
+        EasyMock.replay(publisher);
+        TokenBucket messageBucket = new TokenBucket(1, 1);
+        TokenBucket byteBucket = new TokenBucket(1, 1);
+        byteBucket.tryAcquire(1);
+
+        RateLimitedPublisher rateLimitedPublisher = new RateLimitedPublisher(publisher, messageBucket, byteBucket);
+        Assert.assertFalse(rateLimitedPublisher.tryPublish(new Message().body("1"), DeliveryOptions.NONE));
+        Assert.assertEquals(1, messageBucket.getAvailableTokens());
+
+        EasyMock.verify(publisher);
+    }
+}
@@ -0,0 +1,48 @@
+package com.zanox.rabbiteasy.publisher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void shouldRetryWithFixedInterval() {
+        RetryPolicy policy = RetryPolicy.fixed(3, 100);
+        Assert.assertTrue(policy.shouldRetry(1, 0));
+        Assert.assertTrue(policy.shouldRetry(2, 0));
+        Assert.assertFalse(policy.shouldRetry(3, 0));
+        Assert.assertEquals(100, policy.getInterval(1));
+        Assert.assertEquals(100, policy.getInterval(2));
+    }
+
+    @Test
+    public void shouldGrowIntervalExponentially() {
+        RetryPolicy policy = RetryPolicy.exponential(10, 100, 2, 500);
+        Assert.assertEquals(100, policy.getInterval(1));
+        Assert.assertEquals(200, policy.getInterval(2));
+        Assert.assertEquals(400, policy.getInterval(3));
+        Assert.assertEquals(500, policy.getInterval(4));
+    }
+
+    @Test
+    public void shouldVaryIntervalWithinJitter() {
+        RetryPolicy policy = RetryPolicy.fixed(3, 1000).withJitter(0.2);
+        for (int i = 0; i < 100; i++) {
+            long interval = policy.getInterval(1);
+            Assert.assertTrue(interval >= 800 && interval <= 1200);
+        }
+    }
+
+    @Test
+    public void shouldStopRetryingAfterMaxElapsedTime() {
+        RetryPolicy policy = RetryPolicy.fixed(10, 100).withMaxElapsedTime(1000);
+        Assert.assertTrue(policy.shouldRetry(1, 999));
+        Assert.assertFalse(policy.shouldRetry(1, 1000));
+        Assert.assertEquals(10, policy.getMaxAttempts());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectPolicyWithoutAttempts() {
+        RetryPolicy.fixed(0, 100);
+    }
+}
@@ -0,0 +1,55 @@
+package com.zanox.rabbiteasy.publisher;
+
+import com.zanox.rabbiteasy.Message;
+import org.junit.Assert;
+import org.junit.Test;
+import org.powermock.api.easymock.PowerMock;
+
+import java.util.Arrays;
+
+import static org.easymock.EasyMock.expectLastCall;
+
+public class ShardedPublisherTest extends MessagePublisherTest {
+
+    @Test
+    public void shouldAssignSameKeyToSameShard() {
+        ShardedPublisher publisher = new ShardedPublisher(connectionFactory, PublisherReliability.NONE, 8);
+        boolean[] usedShards = new boolean[8];
+        for (int i = 0; i < 1000; i++) {
+            int index = publisher.shardIndex("key-" + i);
+            Assert.assertEquals(index, publisher.shardIndex("key-" + i));
+            usedShards[index] = true;
+        }
+        for (boolean usedShard : usedShards) {
+            Assert.assertTrue(usedShard);
+        }
+    }
+
+    @Test
+    public void shouldShardByHeaderOrRoutingKey() {
+        ShardedPublisher publisher = new ShardedPublisher(connectionFactory, PublisherReliability.NONE, 4);
+        publisher.setShardKeyHeader("customer");
+        Message message = new Message().routingKey(TEST_ROUTING_KEY);
+        Assert.assertEquals(TEST_ROUTING_KEY, publisher.shardKey(message));
+        message.header("customer", 42);
+        Assert.assertEquals("42", publisher.shardKey(message));
+    }
+
+    @Test
+    public void shouldPublishMessagesOfEveryShard() throws Exception {
+        ShardedPublisher publisher = new ShardedPublisher(connectionFactory, PublisherReliability.NONE, 2);
+        Message first = new Message().exchange(TEST_EXCHANGE).routingKey("first");
+        Message second = new Message().exchange(TEST_EXCHANGE).routingKey("second");
+
+        mockConnectionOperations();
+        channel.basicPublish(TEST_EXCHANGE, "first", false, false, first.getBasicProperties(), first.getBodyContent());
+        expectLastCall().once();
+        channel.basicPublish(TEST_EXCHANGE, "second", false, false, second.getBasicProperties(), second.getBodyContent());
+        expectLastCall().once();
+        PowerMock.replayAll();
+
+        publisher.publish(Arrays.asList(first, second));
+
+        PowerMock.verifyAll();
+    }
+}
@@ -1,9 +1,15 @@
 package com.zanox.rabbiteasy.publisher;
 
+import com.zanox.rabbiteasy.ChannelPool;
 import com.zanox.rabbiteasy.Message;
+import org.junit.Assert;
 import org.junit.Test;
 import org.powermock.api.easymock.PowerMock;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
 
 public class SimplePublisherTest extends MessagePublisherTest {
@@ -23,4 +29,42 @@ public class SimplePublisherTest extends MessagePublisherTest {
         PowerMock.verifyAll();
     }
 
+    @Test
+    public void shouldKeepInterruptWhileWaitingForRetry() throws Exception {
+        Message message = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        SimplePublisher publisher = new SimplePublisher(connectionFactory);
+
+        mockConnectionOperations();
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, message.getBasicProperties(), message.getBodyContent());
+        expectLastCall().andThrow(new IOException("Publish failed"));
+        PowerMock.replayAll();
+
+        Thread.currentThread().interrupt();
+        try {
+            publisher.publish(message);
+            Assert.fail("Interrupted retry must fail");
+        } catch (InterruptedIOException e) {
+            Assert.assertTrue(Thread.interrupted());
+        }
+        PowerMock.verifyAll();
+    }
+
+    @Test
+    public void shouldPublishWithPooledChannel() throws Exception {
+        Message message = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+        SimplePublisher publisher = new SimplePublisher(new ChannelPool(connectionFactory));
+
+        expect(connectionFactory.newConnection()).andReturn(connection).once();
+        expect(connection.createChannel()).andReturn(channel).once();
+        expect(channel.isOpen()).andReturn(true).anyTimes();
+        channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, message.getBasicProperties(), message.getBodyContent());
+        expectLastCall().times(2);
+        PowerMock.replayAll();
+
+        publisher.publish(message);
+        publisher.publish(message);
+
+        PowerMock.verifyAll();
+    }
+
 }
@@ -0,0 +1,41 @@
+package com.zanox.rabbiteasy.publisher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    @Test
+    public void shouldAllowBurstUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+        Assert.assertTrue(bucket.tryAcquire(1));
+        Assert.assertTrue(bucket.tryAcquire(2));
+        Assert.assertFalse(bucket.tryAcquire(1));
+        Assert.assertEquals(0, bucket.getAvailableTokens());
+    }
+
+    @Test
+    public void shouldReturnReleasedTokens() {
+        TokenBucket bucket = new TokenBucket(1, 2);
+        Assert.assertTrue(bucket.tryAcquire(2));
+        bucket.release(1);
+        Assert.assertTrue(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void shouldAcquireMoreThanCapacityFromFullBucketOnly() {
+        TokenBucket bucket = new TokenBucket(1, 2);
+        Assert.assertTrue(bucket.tryAcquire(5));
+        Assert.assertFalse(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void shouldWaitForRefill() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(50, 1);
+        bucket.acquire(1);
+        long start = System.nanoTime();
+        bucket.acquire(1);
+        long waitedMillis = (System.nanoTime() - start) / 1000000;
+        Assert.assertTrue("Waited " + waitedMillis + " ms", waitedMillis >= 15);
+    }
+}
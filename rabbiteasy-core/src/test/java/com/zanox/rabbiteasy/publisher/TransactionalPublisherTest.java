@@ -1,9 +1,20 @@
 package com.zanox.rabbiteasy.publisher;
 
+import com.rabbitmq.client.AMQP;
 import com.zanox.rabbiteasy.Message;
+import org.easymock.IAnswer;
+import org.junit.Assert;
 import org.junit.Test;
 import org.powermock.api.easymock.PowerMock;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.easymock.EasyMock.anyBoolean;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
 
@@ -28,4 +39,133 @@ public class TransactionalPublisherTest extends MessagePublisherTest {
 		PowerMock.verifyAll();
 	}
 
+	@Test
+	public void shouldCommitConcurrentPublishesTogether() throws Exception {
+		final TransactionalPublisher publisher = new TransactionalPublisher(connectionFactory);
+		publisher.setGroupCommit(true);
+		final List<Thread> waitingThreads = new ArrayList<Thread>();
+		final AtomicInteger failures = new AtomicInteger();
+
+		mockConnectionOperations();
+		expect(channel.txSelect()).andReturn(null).times(2);
+		channel.basicPublish(eq(TEST_EXCHANGE), eq(TEST_ROUTING_KEY), anyBoolean(), anyBoolean(),
+				(AMQP.BasicProperties) anyObject(), (byte[]) anyObject());
+		expectLastCall().times(3);
+		// While the first transaction is committed, two more threads start publishing
+		expect(channel.txCommit()).andAnswer(new IAnswer<AMQP.Tx.CommitOk>() {
+			@Override
+			public AMQP.Tx.CommitOk answer() throws Throwable {
+				for (int i = 0; i < 2; i++) {
+					Thread thread = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								publisher.publish(new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY));
+							} catch (IOException e) {
+								failures.incrementAndGet();
+							}
+						}
+					});
+					thread.start();
+					waitingThreads.add(thread);
+				}
+				for (Thread thread : waitingThreads) {
+					while (thread.getState() != Thread.State.WAITING) {
+						Thread.sleep(1);
+					}
+				}
+				return null;
+			}
+		});
+		expect(channel.txCommit()).andReturn(null);
+		PowerMock.replayAll();
+
+		publisher.publish(new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY));
+		for (Thread thread : waitingThreads) {
+			thread.join();
+		}
+
+		Assert.assertEquals(0, failures.get());
+		PowerMock.verifyAll();
+	}
+
+	@Test
+	public void shouldFailWaitingPublishesIfLeaderFailsWithError() throws Exception {
+		final TransactionalPublisher publisher = new TransactionalPublisher(connectionFactory);
+		publisher.setGroupCommit(true);
+		final List<Thread> waitingThreads = new ArrayList<Thread>();
+		final AtomicInteger errors = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+
+		mockConnectionOperations();
+		expect(channel.txSelect()).andReturn(null).times(2);
+		channel.basicPublish(eq(TEST_EXCHANGE), eq(TEST_ROUTING_KEY), anyBoolean(), anyBoolean(),
+				(AMQP.BasicProperties) anyObject(), (byte[]) anyObject());
+		expectLastCall().times(3);
+		// While the first transaction is committed, two more threads start publishing
+		expect(channel.txCommit()).andAnswer(new IAnswer<AMQP.Tx.CommitOk>() {
+			@Override
+			public AMQP.Tx.CommitOk answer() throws Throwable {
+				for (int i = 0; i < 2; i++) {
+					Thread thread = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								publisher.publish(new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY));
+							} catch (IOException e) {
+								failures.incrementAndGet();
+							} catch (Error e) {
+								errors.incrementAndGet();
+							}
+						}
+					});
+					thread.start();
+					waitingThreads.add(thread);
+				}
+				for (Thread thread : waitingThreads) {
+					while (thread.getState() != Thread.State.WAITING) {
+						Thread.sleep(1);
+					}
+				}
+				return null;
+			}
+		});
+		// The thread committing the second group fails with an error
+		expect(channel.txCommit()).andThrow(new Error("Commit crashed"));
+		PowerMock.replayAll();
+
+		publisher.publish(new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY));
+		for (Thread thread : waitingThreads) {
+			thread.join(5000);
+			Assert.assertFalse(thread.isAlive());
+		}
+
+		Assert.assertEquals(1, errors.get());
+		Assert.assertEquals(1, failures.get());
+		PowerMock.verifyAll();
+	}
+
+	@Test
+	public void shouldFailAllPublishesOfRolledBackGroup() throws Exception {
+		TransactionalPublisher publisher = new TransactionalPublisher(connectionFactory);
+		publisher.setGroupCommit(true);
+		publisher.setRetryPolicy(RetryPolicy.NO_RETRY);
+		Message message = new Message().exchange(TEST_EXCHANGE).routingKey(TEST_ROUTING_KEY);
+
+		mockConnectionOperations();
+		expect(channel.txSelect()).andReturn(null);
+		channel.basicPublish(TEST_EXCHANGE, TEST_ROUTING_KEY, false, false, message.getBasicProperties(), message.getBodyContent());
+		expect(channel.txCommit()).andThrow(new IOException("Commit failed"));
+		expect(channel.txRollback()).andReturn(null);
+		PowerMock.replayAll();
+
+		try {
+			publisher.publish(message);
+			Assert.fail("Rolled back publish must fail");
+		} catch (IOException e) {
+			Assert.assertEquals("Commit failed", e.getCause().getMessage());
+		}
+		PowerMock.verifyAll();
+	}
+
 }